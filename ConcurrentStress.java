@@ -0,0 +1,169 @@
+import java.awt.Color;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Stress check for ConcurrentWindowManager. Editor threads all click in
+ * 		every window at once, each on its own set of points far enough
+ * 		apart that no two squares overlap, while a raiser thread keeps
+ * 		shuffling the stack and a reader thread keeps taking snapshots.
+ *
+ * Each click on a point adds or removes the square there, so after the
+ * 		run a window must hold exactly one square for every point that
+ * 		was clicked an odd number of times. Any other count means an edit
+ * 		was lost. The stack must still hold every window exactly once,
+ * 		with the top window the one a click hits, and every snapshot 
+ * 		must have held every window exactly once.
+ *
+ * Usage: java ConcurrentStress [threads] [clicks per thread] [windows]
+ * @author Grady Barrett
+ */
+public class ConcurrentStress {
+
+	static final int SPACING = 30; // distance between clicked points, over a square
+
+	static volatile boolean done = false; // set when the editors have finished
+
+	/**
+	 * Runs the check and exits with status 1 if it fails.
+	 * @param args
+	 * 			see the class comment
+	 */
+	public static void main(String[] args) throws InterruptedException {
+
+		final int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+		final int clicks = args.length > 1 ? Integer.parseInt(args[1]) : 200000;
+		final int windowCount = args.length > 2 ? Integer.parseInt(args[2]) : 256;
+
+		final ConcurrentWindowManager manager = new ConcurrentWindowManager();
+		for(int i = 0; i < windowCount; i++){
+			manager.addWindow(new Windows(0, 0, SimpleWindowsGUI.CANVAS_WIDTH - 8,
+					SimpleWindowsGUI.CANVAS_HEIGHT - 3, new Color(i * 0x10101)));
+		}
+		final int cols = (SimpleWindowsGUI.CANVAS_WIDTH - 8 - 20) / SPACING;
+		final int rows = (SimpleWindowsGUI.CANVAS_HEIGHT - 3 - 20) / SPACING;
+		final int points = cols * rows;
+
+		// times each thread clicked each point of each window
+		final int[][][] toggles = new int[threads][windowCount][points];
+		final CountDownLatch start = new CountDownLatch(1);
+		final AtomicReference<String> failure = new AtomicReference<String>();
+
+		Thread[] editors = new Thread[threads];
+		for(int t = 0; t < threads; t++){
+			final int id = t;
+			editors[t] = new Thread(new Runnable(){
+				public void run(){
+					Random rand = new Random(id);
+					await(start);
+					for(int i = 0; i < clicks; i++){
+						int w = rand.nextInt(windowCount);
+						// thread id owns the points whose number is id mod threads
+						int p = id + threads * rand.nextInt((points - 1 - id) / threads + 1);
+						manager.clickWindow(w, 10 + 10 + (p % cols) * SPACING,
+								10 + 10 + (p / cols) * SPACING);
+						toggles[id][w][p]++;
+					}//for loop end
+				}
+			}, "editor-" + t);
+		}//for loop end
+
+		Thread raiser = new Thread(new Runnable(){
+			public void run(){
+				Random rand = new Random(-1);
+				await(start);
+				while(!done){
+					manager.raise(manager.window(rand.nextInt(windowCount)));
+				}
+			}
+		}, "raiser");
+
+		Thread reader = new Thread(new Runnable(){
+			public void run(){
+				await(start);
+				while(!done){
+					SceneSnapshot s = manager.snapshot();
+					if(s.views.length != windowCount){
+						failure.compareAndSet(null, "snapshot held " + s.views.length
+								+ " windows");
+					}
+					Set<SceneSnapshot.WindowView> seen = new HashSet<SceneSnapshot.WindowView>();
+					for(SceneSnapshot.WindowView v : s.views){
+						seen.add(v);
+					}
+					if(seen.size() != windowCount){
+						failure.compareAndSet(null, "snapshot repeated a window");
+					}
+				}
+			}
+		}, "reader");
+
+		for(Thread e : editors){
+			e.start();
+		}
+		raiser.setDaemon(true);
+		reader.setDaemon(true);
+		raiser.start();
+		reader.start();
+		long began = System.nanoTime();
+		start.countDown();
+		for(Thread e : editors){
+			e.join();
+		}
+		double seconds = (System.nanoTime() - began) / 1e9;
+		done = true;
+		raiser.join();
+		reader.join();
+
+		Windows[] order = manager.windows();
+		Set<Windows> unique = new HashSet<Windows>();
+		for(Windows w : order){
+			unique.add(w);
+		}
+		if(order.length != windowCount || unique.size() != windowCount){
+			failure.compareAndSet(null, "stack lost or repeated a window");
+		}
+		if(manager.topmostAt(SPACING, SPACING) != order[order.length - 1]){
+			failure.compareAndSet(null, "hit-test missed the top window");
+		}
+		for(int w = 0; w < windowCount; w++){
+			int expected = 0;
+			for(int p = 0; p < points; p++){
+				int n = 0;
+				for(int t = 0; t < threads; t++){
+					n += toggles[t][w][p];
+				}
+				expected += n % 2;
+			}//for loop end
+			int actual = manager.stack.get().byId[w].squares.size();
+			if(actual != expected){
+				failure.compareAndSet(null, "window " + w + " holds " + actual
+						+ " squares, expected " + expected);
+			}
+		}//for loop end
+
+		System.out.println(String.format("%d threads, %d clicks in %.3f s (%.0f clicks/s)",
+				threads, (long) threads * clicks, seconds, threads * clicks / seconds));
+		if(failure.get() != null){
+			System.out.println("FAILED: " + failure.get());
+			System.exit(1);
+		}
+		System.out.println("ok");
+	}//main end
+
+	/**
+	 * Waits for the start signal.
+	 * @param start
+	 * 			latch released when every thread is ready
+	 */
+	static void await(CountDownLatch start){
+		try{
+			start.await();
+		}catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+		}
+	}//await end
+}//ConcurrentStress end
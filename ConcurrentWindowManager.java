@@ -0,0 +1,439 @@
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Thread-safe window manager for many threads changing windows at once.
+ *
+ * The z-order is kept as a stamp per window. A single atomic clock holds 
+ * 		the latest stamp together with the id of the window that got it, 
+ * 		which is the active window, so raising a window is one 
+ * 		compare-and-set on the clock followed by storing the new stamp for 
+ * 		the window, whatever the number of windows. The back to front 
+ * 		order is only built when it is asked for, by sorting the windows 
+ * 		by stamp. Square edits lock only a stripe of windows, so edits to 
+ * 		windows on different stripes run in parallel.
+ *
+ * Windows do not move in this window manager, so hit-testing uses a grid 
+ * 		of cells over the canvas, each holding the windows that overlap 
+ * 		it, and reads their geometry without locking. A click only checks 
+ * 		the windows in its cell and takes the one with the latest stamp. 
+ * 		The grid, the windows by id and the stamps form an immutable Stack 
+ * 		that is replaced with compare-and-set when a window is added.
+ *
+ * Every edit also holds the read side of a read/write lock, which
+ * 		editors share with each other. snapshot takes the write side for
+ * 		as long as it takes to copy the windows that changed, so the
+ * 		copy is a cut of the scene with no edit half done. Drawing always
+ * 		goes through a snapshot, so draw can be called from any thread.
+ * @author Grady Barrett
+ */
+public class ConcurrentWindowManager implements SimpleWindowManager,
+		SnapshotSource, DamageTracking {
+
+	static final int CELL_SIZE = 64; // width and height of a grid cell in pixels
+	static final int ID_BITS = 24; // low bits of the clock holding the active window id
+	static final long ID_MASK = (1L << ID_BITS) - 1;
+
+	// current windows, grid and stamps, replaced as a whole when a window
+	//		is added
+	AtomicReference<Stack> stack = new AtomicReference<Stack>(new Stack(
+			new Windows[0], new Windows[gridCols() * gridRows()][], 
+			new AtomicLongArray(0)));
+
+	// latest stamp shifted up by ID_BITS, or'ed with the id of the window 
+	//		that got it, which is the active window
+	AtomicLong clock = new AtomicLong(0);
+
+	Object[] stripes; // locks guarding the squares of the windows, by id & mask
+	int mask; // stripes.length - 1, the length is a power of two
+
+	// shared by editors, held alone by snapshot
+	ReentrantReadWriteLock cut = new ReentrantReadWriteLock();
+
+	// area changed since the last call to takeDamage, or null
+	AtomicReference<Rectangle> damage = new AtomicReference<Rectangle>();
+
+	// last snapshot handed out, given out again while nothing changed
+	volatile SceneSnapshot lastSnapshot = null;
+
+	/**
+	 * Immutable set of windows with their hit-test grid. The stamps are 
+	 * 		changed in place by raises.
+	 */
+	static class Stack {
+
+		final Windows[] byId; // windows by id
+		final Windows[][] cells; // windows overlapping each cell, by row * cols + col
+		final AtomicLongArray stamps; // stamp of each window, by id
+
+		/**
+		 * Constructor for a stack.
+		 */
+		Stack(Windows[] newById, Windows[][] newCells, AtomicLongArray newStamps){
+			byId = newById;
+			cells = newCells;
+			stamps = newStamps;
+		}//Stack end
+	}//Stack end
+
+	/**
+	 * Constructor for an empty window manager with enough lock stripes
+	 * 		for the processors of this machine.
+	 */
+	public ConcurrentWindowManager(){
+		this(4 * Runtime.getRuntime().availableProcessors());
+	}//ConcurrentWindowManager end
+
+	/**
+	 * Constructor for an empty window manager.
+	 * @param stripeCount
+	 * 			minimum number of locks guarding the windows, rounded up to
+	 * 				a power of two
+	 */
+	public ConcurrentWindowManager(int stripeCount){
+
+		int length = Integer.highestOneBit(Math.max(1, stripeCount - 1)) << 1;
+		stripes = new Object[length];
+		for(int i = 0; i < length; i++){
+			stripes[i] = new Object();
+		}
+		mask = length - 1;
+	}//ConcurrentWindowManager end
+
+	/**
+	 * Puts a new window on top of the scene. The window gets the next
+	 * 		id, which picks its lock stripe, and is filed in the cells of 
+	 * 		the grid it overlaps.
+	 * @param w
+	 * 			window to be added
+	 */
+	public void addWindow(Windows w){
+
+		while(true){
+			Stack current = stack.get();
+			int n = current.byId.length;
+			if(n > ID_MASK){
+				throw new IllegalStateException("too many windows");
+			}
+			w.id = n;
+			Windows[] byId = Arrays.copyOf(current.byId, n + 1);
+			byId[n] = w;
+
+			// only the cells the window overlaps are copied
+			Windows[][] cells = current.cells.clone();
+			int lastCol = col(w.winUpperLeftX + w.winWidth + 7);
+			int lastRow = row(w.winUpperLeftY + w.winHeight + 2);
+			for(int r = row(w.winUpperLeftY - 3); r <= lastRow; r++){
+				for(int c = col(w.winUpperLeftX); c <= lastCol; c++){
+					Windows[] cell = current.cells[r * gridCols() + c];
+					cell = cell == null ? new Windows[1] : Arrays.copyOf(cell, cell.length + 1);
+					cell[cell.length - 1] = w;
+					cells[r * gridCols() + c] = cell;
+				}
+			}//for loop end
+
+			AtomicLongArray stamps = new AtomicLongArray(n + 1);
+			for(int i = 0; i < n; i++){
+				stamps.set(i, current.stamps.get(i));
+			}//for loop end
+			if(stack.compareAndSet(current, new Stack(byId, cells, stamps))){
+				// a raise may have stamped the old stack after the copy
+				for(int i = 0; i < n; i++){
+					raiseStamp(stamps, i, current.stamps.get(i));
+				}//for loop end
+				raise(w);
+				addDamage(w.getBounds());
+				return;
+			}
+		}//while end
+	}//addWindow end
+
+	/**
+	 * Draws a consistent copy of the scene.
+	 * @param g
+	 * 			Graphics object for drawing
+	 */
+	public void draw(Graphics g){
+		snapshot().draw(g);
+	}//draw end
+
+	/**
+	 * Handles a click: edits the squares of the topmost window under it
+	 * 		if that is the active window, otherwise raises that window.
+	 * 		The decision is made on the stack as it was when the click
+	 * 		came in.
+	 * @param x
+	 * 			x coordinate of click
+	 * @param y
+	 * 			y coordinate of click
+	 */
+	public void handleClick(int x, int y){
+
+		Windows hit = topmostAt(x, y);
+		if(hit == null){
+			return; // click did not fall inside any window
+		}
+		if(hit.id == (int) (clock.get() & ID_MASK)){
+			edit(hit, x, y);
+		}else{
+			raise(hit);
+		}
+	}//handleClick end
+
+	/**
+	 * Finds the window with the latest stamp that contains the point, 
+	 * 		checking only the windows in the cell of the point.
+	 * @param x
+	 * 			x coordinate of the point
+	 * @param y
+	 * 			y coordinate of the point
+	 * @return the topmost window under the point, or null if the point
+	 * 		is not inside any window
+	 */
+	public Windows topmostAt(int x, int y){
+
+		Stack current = stack.get();
+		Windows[] cell = current.cells[row(y) * gridCols() + col(x)];
+		if(cell == null){
+			return null;
+		}
+		Windows hit = null;
+		long hitStamp = -1;
+		for(int i = 0; i < cell.length; i++){
+			if(cell[i].isInside(x, y)){
+				long stamp = current.stamps.get(cell[i].id);
+				if(stamp > hitStamp){
+					hit = cell[i];
+					hitStamp = stamp;
+				}
+			}
+		}//for loop end
+		return hit;
+	}//topmostAt end
+
+	/**
+	 * Passes a click straight to one window, whatever its place in the
+	 * 		stack, for agents that target windows directly.
+	 * @param id
+	 * 			id of the window
+	 * @param x
+	 * 			x coordinate of click
+	 * @param y
+	 * 			y coordinate of click
+	 */
+	public void clickWindow(int id, int x, int y){
+		edit(stack.get().byId[id], x, y);
+	}//clickWindow end
+
+	/**
+	 * Adds or removes squares in a window under its stripe lock.
+	 * @param w
+	 * 			window clicked
+	 * @param x
+	 * 			x coordinate of click
+	 * @param y
+	 * 			y coordinate of click
+	 */
+	void edit(Windows w, int x, int y){
+
+		Rectangle changed;
+		cut.readLock().lock();
+		try{
+			synchronized(stripes[w.id & mask]){
+				changed = w.handleClick(x, y);
+				if(changed != null){
+					changed = new Rectangle(changed); // reused by the next click
+				}
+			}
+		}finally{
+			cut.readLock().unlock();
+		}
+		addDamage(changed);
+	}//edit end
+
+	/**
+	 * Raises a window to the top of the stack without locking. The 
+	 * 		window takes the next stamp with one compare-and-set on the 
+	 * 		clock, so a raise costs the same however many windows there 
+	 * 		are.
+	 * @param w
+	 * 			window to be raised
+	 */
+	public void raise(Windows w){
+
+		while(true){
+			long top = clock.get();
+			int oldTop = (int) (top & ID_MASK);
+			if(oldTop == w.id){
+				return; // already on top
+			}
+			long stamp = (top >>> ID_BITS) + 1;
+			if(clock.compareAndSet(top, stamp << ID_BITS | w.id)){
+				Stack current = stack.get();
+				raiseStamp(current.stamps, w.id, stamp);
+				// an add may have copied the stamps before they were set
+				for(Stack now = stack.get(); now != current; now = stack.get()){
+					raiseStamp(now.stamps, w.id, stamp);
+					current = now;
+				}//for loop end
+
+				// the old active window loses its red border and the
+				//		raised window is uncovered and gets one
+				if(oldTop < current.byId.length && current.byId[oldTop] != w){
+					addDamage(current.byId[oldTop].getBounds());
+				}
+				addDamage(w.getBounds());
+				if(WindowMetrics.ENABLED){
+					WindowMetrics.windowsRaised.increment();
+				}
+				return;
+			}
+		}//while end
+	}//raise end
+
+	/**
+	 * Sets the stamp of a window unless it already has a later one.
+	 * @param stamps
+	 * 			stamps of a stack
+	 * @param id
+	 * 			id of the window
+	 * @param stamp
+	 * 			new stamp
+	 */
+	static void raiseStamp(AtomicLongArray stamps, int id, long stamp){
+		while(true){
+			long old = stamps.get(id);
+			if(old >= stamp || stamps.compareAndSet(id, old, stamp)){
+				return;
+			}
+		}//while end
+	}//raiseStamp end
+
+	/**
+	 * Copies the scene while no edit is in progress. The windows are put 
+	 * 		in order by stamp, which costs O(n log n), and only windows 
+	 * 		whose squares changed since the last snapshot are copied. 
+	 * 		While nothing changed the last copy is handed out again.
+	 * @return an immutable copy of the windows and their squares
+	 */
+	public SceneSnapshot snapshot(){
+
+		// raises do not take the lock, so the order is sorted before it
+		Windows[] order = order(stack.get());
+		cut.writeLock().lock();
+		try{
+			SceneSnapshot last = lastSnapshot;
+			if(last == null || !last.matches(order)){
+				last = new SceneSnapshot(order);
+				lastSnapshot = last;
+			}
+			return last;
+		}finally{
+			cut.writeLock().unlock();
+		}
+	}//snapshot end
+
+	/**
+	 * Returns the union of all areas changed since the last call and
+	 * 		resets it.
+	 * @return the changed area, or null if nothing changed
+	 */
+	public Rectangle takeDamage(){
+		return damage.getAndSet(null);
+	}//takeDamage end
+
+	/**
+	 * @return the windows from back to front, in a new array
+	 */
+	public Windows[] windows(){
+		return order(stack.get());
+	}//windows end
+
+	/**
+	 * @param id
+	 * 			id of a window
+	 * @return the window with the id
+	 */
+	public Windows window(int id){
+		return stack.get().byId[id];
+	}//window end
+
+	/**
+	 * Puts the windows of a stack in order by their stamps as they are 
+	 * 		now. Each stamp is read once, so raises going on at the same 
+	 * 		time cannot upset the sort.
+	 * @param current
+	 * 			stack to be ordered
+	 * @return the windows from back to front
+	 */
+	static Windows[] order(Stack current){
+
+		int n = current.byId.length;
+		long[] keys = new long[n];
+		for(int i = 0; i < n; i++){
+			keys[i] = current.stamps.get(i) << ID_BITS | i;
+		}//for loop end
+		Arrays.sort(keys);
+		Windows[] order = new Windows[n];
+		for(int i = 0; i < n; i++){
+			order[i] = current.byId[(int) (keys[i] & ID_MASK)];
+		}//for loop end
+		return order;
+	}//order end
+
+	/**
+	 * @return number of grid columns over the canvas
+	 */
+	static int gridCols(){
+		return (SimpleWindowsGUI.CANVAS_WIDTH + CELL_SIZE - 1) / CELL_SIZE;
+	}
+
+	/**
+	 * @return number of grid rows over the canvas
+	 */
+	static int gridRows(){
+		return (SimpleWindowsGUI.CANVAS_HEIGHT + CELL_SIZE - 1) / CELL_SIZE;
+	}
+
+	/**
+	 * @param x
+	 * 			x coordinate
+	 * @return the grid column holding x, clamped to the grid
+	 */
+	static int col(int x){
+		return Math.min(gridCols() - 1, Math.max(0, x / CELL_SIZE));
+	}
+
+	/**
+	 * @param y
+	 * 			y coordinate
+	 * @return the grid row holding y, clamped to the grid
+	 */
+	static int row(int y){
+		return Math.min(gridRows() - 1, Math.max(0, y / CELL_SIZE));
+	}
+
+	/**
+	 * Merges an area into the damage waiting to be repainted.
+	 * @param r
+	 * 			changed area, may be null
+	 */
+	void addDamage(Rectangle r){
+
+		if(r == null){
+			return;
+		}
+		while(true){
+			Rectangle old = damage.get();
+			Rectangle merged = old == null ? r : old.union(r);
+			if(damage.compareAndSet(old, merged)){
+				return;
+			}
+		}//while end
+	}//addDamage end
+}//ConcurrentWindowManager end
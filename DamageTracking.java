@@ -0,0 +1,17 @@
+import java.awt.Rectangle;
+
+/**
+ * Implemented by window managers that can report which part of the 
+ * canvas changed since the last call, so the GUI can repaint only that 
+ * area instead of the whole canvas.
+ * @author Grady Barrett
+ */
+public interface DamageTracking {
+
+	/**
+	 * Returns the union of all areas changed since the last call and 
+	 * 		resets it.
+	 * @return the changed area, or null if nothing changed
+	 */
+	Rectangle takeDamage();
+}
@@ -0,0 +1,36 @@
+/**
+ * Implemented by window managers that let the user move and resize 
+ * windows by dragging them. A drag is a press, any number of drags and 
+ * a release. A press and release without a drag in between is followed 
+ * by a normal handleClick.
+ * @author Grady Barrett
+ */
+public interface DragHandling {
+
+	/**
+	 * Called when a mouse button is pressed.
+	 * @param x
+	 * 			x coordinate of the press
+	 * @param y
+	 * 			y coordinate of the press
+	 */
+	void handlePress(int x, int y);
+
+	/**
+	 * Called when the mouse moves with the button held down.
+	 * @param x
+	 * 			x coordinate of the mouse
+	 * @param y
+	 * 			y coordinate of the mouse
+	 */
+	void handleDrag(int x, int y);
+
+	/**
+	 * Called when the mouse button is released.
+	 * @param x
+	 * 			x coordinate of the release
+	 * @param y
+	 * 			y coordinate of the release
+	 */
+	void handleRelease(int x, int y);
+}
@@ -0,0 +1,307 @@
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Drives a SimpleWindowManager without a GUI by replaying a stream of
+ * 		clicks. Clicks are read in batches and applied straight to the
+ * 		window manager, and the scene is only drawn into an offscreen
+ * 		image every so many clicks and once at the end.
+ *
+ * Click streams are either CSV text, one "x,y" pair per line, or a
+ * 		compact binary file: the 4 bytes "CLK1" followed by x and y as
+ * 		pairs of 32 bit ints until the end of the file.
+ *
+ * Usage: java EventReplay [-batch n] [-render n] [-windows n] [-squares n]
+ * 			(file | -synthetic count [seed])
+ * 		  java EventReplay -write file.bin count [seed]
+ * @author Grady Barrett
+ */
+public class EventReplay {
+
+	static final int MAGIC = 0x434C4B31; // "CLK1", start of a binary stream
+
+	SimpleWindowManager model; // window manager receiving the clicks
+	int batchSize; // number of clicks read before they are applied
+	int renderEvery; // clicks between renders, 0 to render only at the end
+	BufferedImage image; // offscreen canvas used for rendering
+	long events = 0; // clicks applied so far
+	long renders = 0; // renders done so far
+	long sinceRender = 0; // clicks applied since the last render
+
+	/**
+	 * Constructor for a replay engine.
+	 * @param newModel
+	 * 			window manager receiving the clicks
+	 * @param newBatchSize
+	 * 			number of clicks read before they are applied
+	 * @param newRenderEvery
+	 * 			clicks between renders, 0 to render only at the end
+	 */
+	public EventReplay(SimpleWindowManager newModel, int newBatchSize,
+			int newRenderEvery){
+
+		model = newModel;
+		batchSize = newBatchSize;
+		renderEvery = newRenderEvery;
+		image = new BufferedImage(SimpleWindowsGUI.CANVAS_WIDTH,
+				SimpleWindowsGUI.CANVAS_HEIGHT, BufferedImage.TYPE_INT_RGB);
+	}//EventReplay end
+
+	/**
+	 * Replays a CSV click stream. Blank lines and lines starting with #
+	 * 		are skipped.
+	 * @param in
+	 * 			reader for the CSV text
+	 * @throws IOException
+	 * 			if the stream cannot be read or a line is not an x, y pair
+	 */
+	public void replayCsv(BufferedReader in) throws IOException {
+
+		int[] batch = new int[batchSize * 2]; // x, y pairs
+		int n = 0; // clicks in the batch
+		int lineNumber = 0; // line being read, counted from 1
+		String line;
+		while((line = in.readLine()) != null){
+			lineNumber++;
+			line = line.trim();
+			if(line.length() == 0 || line.charAt(0) == '#'){
+				continue;
+			}
+			int comma = line.indexOf(',');
+			if(comma < 0){
+				throw new IOException("line " + lineNumber + ": expected x,y but found \""
+						+ line + "\"");
+			}
+			try{
+				batch[n * 2] = Integer.parseInt(line.substring(0, comma).trim());
+				batch[n * 2 + 1] = Integer.parseInt(line.substring(comma + 1).trim());
+			}catch(NumberFormatException e){
+				throw new IOException("line " + lineNumber + ": " + e.getMessage(), e);
+			}
+			if(++n == batchSize){
+				apply(batch, n);
+				n = 0;
+			}
+		}//while end
+		apply(batch, n);
+		finish();
+	}//replayCsv end
+
+	/**
+	 * Replays a binary click stream.
+	 * @param in
+	 * 			stream positioned at the start of the file
+	 * @throws IOException
+	 * 			if the stream cannot be read or is not a click stream
+	 */
+	public void replayBinary(DataInputStream in) throws IOException {
+
+		if(in.readInt() != MAGIC){
+			throw new IOException("not a binary click stream");
+		}
+		int[] batch = new int[batchSize * 2]; // x, y pairs
+		int n = 0; // clicks in the batch
+		try{
+			while(true){
+				int x = in.readInt();
+				batch[n * 2 + 1] = in.readInt(); // a half pair ends the stream
+				batch[n * 2] = x;
+				if(++n == batchSize){
+					apply(batch, n);
+					n = 0;
+				}
+			}
+		}catch(EOFException e){
+			// end of stream
+		}
+		apply(batch, n);
+		finish();
+	}//replayBinary end
+
+	/**
+	 * Replays clicks already held in memory.
+	 * @param clicks
+	 * 			x, y pairs
+	 * @param count
+	 * 			number of clicks
+	 */
+	public void replay(int[] clicks, int count){
+
+		int[] batch = new int[batchSize * 2];
+		for(int start = 0; start < count; start += batchSize){
+			int n = Math.min(batchSize, count - start);
+			System.arraycopy(clicks, start * 2, batch, 0, n * 2);
+			apply(batch, n);
+		}//for loop end
+		finish();
+	}//replay end
+
+	/**
+	 * Applies a batch of clicks and renders if enough clicks have gone by.
+	 * @param batch
+	 * 			x, y pairs
+	 * @param n
+	 * 			number of clicks in the batch
+	 */
+	void apply(int[] batch, int n){
+
+		for(int i = 0; i < n; i++){
+			model.handleClick(batch[i * 2], batch[i * 2 + 1]);
+		}//for loop end
+		events += n;
+		sinceRender += n;
+		if(renderEvery > 0 && sinceRender >= renderEvery){
+			render();
+		}
+	}//apply end
+
+	/**
+	 * Renders once more if anything happened since the last render.
+	 */
+	void finish(){
+		if(sinceRender > 0 || renders == 0){
+			render();
+		}
+	}//finish end
+
+	/**
+	 * Draws the scene into the offscreen image. If the window manager
+	 * 		tracks damage only the changed area is redrawn.
+	 */
+	void render(){
+
+		Graphics2D g = image.createGraphics();
+		Rectangle clip = new Rectangle(0, 0, image.getWidth(), image.getHeight());
+		if(model instanceof DamageTracking && renders > 0){
+			Rectangle damage = ((DamageTracking) model).takeDamage();
+			clip = damage == null ? null : damage.intersection(clip);
+		}
+		if(clip != null && !clip.isEmpty()){
+			g.setClip(clip);
+			g.setColor(Color.white);
+			g.fillRect(clip.x, clip.y, clip.width, clip.height);
+			model.draw(g);
+		}
+		g.dispose();
+		renders++;
+		sinceRender = 0;
+	}//render end
+
+	/**
+	 * @param count
+	 * 			number of clicks
+	 * @param seed
+	 * 			seed for the random number generator
+	 * @return count random clicks on the canvas as x, y pairs
+	 */
+	static int[] synthetic(int count, long seed){
+
+		Random rand = new Random(seed);
+		int[] clicks = new int[count * 2];
+		for(int i = 0; i < count; i++){
+			clicks[i * 2] = rand.nextInt(SimpleWindowsGUI.CANVAS_WIDTH);
+			clicks[i * 2 + 1] = rand.nextInt(SimpleWindowsGUI.CANVAS_HEIGHT);
+		}//for loop end
+		return clicks;
+	}//synthetic end
+
+	/**
+	 * Replays a click stream against a generated scene, or writes a
+	 * 		synthetic binary click stream, and prints the throughput.
+	 * @param args
+	 * 			see the class comment
+	 */
+	public static void main(String[] args) throws IOException {
+
+		int batch = 4096;
+		int renderEvery = 0;
+		int windows = 6; // windows in the scene
+		int squares = 0; // average squares per window at the start
+		int i = 0;
+		for(; i < args.length && args[i].startsWith("-") && args[i].length() > 1; i += 2){
+			if(args[i].equals("-batch")){
+				batch = Integer.parseInt(args[i + 1]);
+			}else if(args[i].equals("-render")){
+				renderEvery = Integer.parseInt(args[i + 1]);
+			}else if(args[i].equals("-windows")){
+				windows = Integer.parseInt(args[i + 1]);
+			}else if(args[i].equals("-squares")){
+				squares = Integer.parseInt(args[i + 1]);
+			}else{
+				break;
+			}
+		}//for loop end
+		if(i >= args.length){
+			System.err.println("usage: java EventReplay [-batch n] [-render n] "
+					+ "[-windows n] [-squares n] (file | -synthetic count [seed])");
+			System.err.println("       java EventReplay -write file.bin count [seed]");
+			return;
+		}
+
+		if(args[i].equals("-write")){ // writes a synthetic binary stream
+			int count = Integer.parseInt(args[i + 2]);
+			long seed = args.length > i + 3 ? Long.parseLong(args[i + 3]) : 1;
+			int[] clicks = synthetic(count, seed);
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+					new FileOutputStream(args[i + 1])));
+			out.writeInt(MAGIC);
+			for(int j = 0; j < count * 2; j++){
+				out.writeInt(clicks[j]);
+			}
+			out.close();
+			return;
+		}
+
+		// the same scene every run, so runs can be compared
+		SceneGenerator generator = new SceneGenerator(1, windows);
+		generator.squaresPerWindow = squares;
+		EventReplay replay = new EventReplay(generator.generate(), batch, renderEvery);
+		long start = System.nanoTime();
+		if(args[i].equals("-synthetic")){
+			int count = Integer.parseInt(args[i + 1]);
+			long seed = args.length > i + 2 ? Long.parseLong(args[i + 2]) : 1;
+			int[] clicks = synthetic(count, seed);
+			start = System.nanoTime(); // generating the clicks is not timed
+			replay.replay(clicks, count);
+		}else{
+			DataInputStream probe = new DataInputStream(new BufferedInputStream(
+					new FileInputStream(args[i])));
+			// a file shorter than the magic number can only be CSV
+			byte[] head = new byte[4];
+			int got = 0;
+			probe.mark(4);
+			int r = 0;
+			while(got < 4 && (r = probe.read(head, got, 4 - got)) > 0){
+				got += r;
+			}//while end
+			probe.reset();
+			boolean binary = got == 4 && ((head[0] & 0xFF) << 24 | (head[1] & 0xFF) << 16
+					| (head[2] & 0xFF) << 8 | (head[3] & 0xFF)) == MAGIC;
+			if(binary){
+				replay.replayBinary(probe);
+				probe.close();
+			}else{
+				probe.close();
+				BufferedReader in = new BufferedReader(new FileReader(args[i]));
+				replay.replayCsv(in);
+				in.close();
+			}
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.println(String.format("%d clicks, %d renders in %.3f s (%.0f clicks/s)",
+				replay.events, replay.renders, seconds, replay.events / seconds));
+	}//main end
+}//EventReplay end
@@ -0,0 +1,162 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free ring buffer of input events for exactly one producer thread 
+ * 		and one consumer thread. Each event is packed into a long, so 
+ * 		offering an event allocates nothing: the event type in the top 
+ * 		8 bits, then x and y as signed 28 bit numbers.
+ * @author Grady Barrett
+ */
+public class EventRing {
+
+	final long[] buffer; // events, indexed by sequence number & mask
+	final long[] stamps; // time each event was offered, same indexing
+	final int mask; // buffer length - 1, the length is a power of two
+	final AtomicLong head = new AtomicLong(); // sequence of the next event to take
+	final AtomicLong tail = new AtomicLong(); // sequence of the next event to offer
+
+	/**
+	 * Constructor for an empty ring.
+	 * @param capacity
+	 * 			minimum number of events the ring can hold, rounded up to 
+	 * 				a power of two
+	 */
+	public EventRing(int capacity){
+		int length = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+		buffer = new long[length];
+		stamps = new long[length];
+		mask = length - 1;
+	}//EventRing end
+
+	static final int CLICK = 0; // mouse click
+	static final int PRESS = 1; // mouse button pressed
+	static final int DRAG = 2; // mouse moved with the button down
+	static final int RELEASE = 3; // mouse button released
+
+	/**
+	 * Packs a click into an event.
+	 * @param x
+	 * 			x coordinate of the click
+	 * @param y
+	 * 			y coordinate of the click
+	 * @return the packed event
+	 */
+	static long click(int x, int y){
+		return event(CLICK, x, y);
+	}
+
+	/**
+	 * Packs a mouse event into an event.
+	 * @param type
+	 * 			CLICK, PRESS, DRAG or RELEASE
+	 * @param x
+	 * 			x coordinate of the mouse
+	 * @param y
+	 * 			y coordinate of the mouse
+	 * @return the packed event
+	 */
+	static long event(int type, int x, int y){
+		return ((long) type << 56) | ((x & 0xFFFFFFFL) << 28) | (y & 0xFFFFFFFL);
+	}
+
+	/**
+	 * @param event
+	 * 			packed event
+	 * @return type of the event
+	 */
+	static int type(long event){
+		return (int) (event >>> 56);
+	}
+
+	/**
+	 * @param event
+	 * 			packed event
+	 * @return x coordinate of the event
+	 */
+	static int x(long event){
+		return (int) (event << 8 >> 36); // shifts back down to extend the sign
+	}
+
+	/**
+	 * @param event
+	 * 			packed event
+	 * @return y coordinate of the event
+	 */
+	static int y(long event){
+		return (int) (event << 36 >> 36);
+	}
+
+	/**
+	 * Adds an event. Must only be called by the producer thread.
+	 * @param event
+	 * 			packed event
+	 * @return false if the ring is full and the event was not added
+	 */
+	public boolean offer(long event){
+		return offer(event, 0);
+	}//offer end
+
+	/**
+	 * Adds an event along with a time stamp. Must only be called by the 
+	 * 		producer thread.
+	 * @param event
+	 * 			packed event
+	 * @param stamp
+	 * 			System.nanoTime when the event happened, handed back by drain
+	 * @return false if the ring is full and the event was not added
+	 */
+	public boolean offer(long event, long stamp){
+
+		long t = tail.get();
+		if(t - head.get() == buffer.length){
+			return false;
+		}
+		buffer[(int) t & mask] = event;
+		stamps[(int) t & mask] = stamp;
+		tail.lazySet(t + 1); // publishes the event to the consumer
+		return true;
+	}//offer end
+
+	/**
+	 * Takes every waiting event, up to the size of out. Must only be 
+	 * 		called by the consumer thread.
+	 * @param out
+	 * 			array receiving the events
+	 * @return the number of events taken
+	 */
+	public int drain(long[] out){
+		return drain(out, null);
+	}//drain end
+
+	/**
+	 * Takes every waiting event and its time stamp, up to the size of out. 
+	 * 		Must only be called by the consumer thread.
+	 * @param out
+	 * 			array receiving the events
+	 * @param outStamps
+	 * 			array receiving the time stamps, as long as out, or null
+	 * @return the number of events taken
+	 */
+	public int drain(long[] out, long[] outStamps){
+
+		long h = head.get();
+		int n = (int) Math.min(tail.get() - h, out.length);
+		for(int i = 0; i < n; i++){
+			out[i] = buffer[(int) (h + i) & mask];
+		}
+		if(outStamps != null){
+			for(int i = 0; i < n; i++){
+				outStamps[i] = stamps[(int) (h + i) & mask];
+			}
+		}
+		head.lazySet(h + n); // frees the slots for the producer
+		return n;
+	}//drain end
+
+	/**
+	 * @return true if no events are waiting
+	 */
+	public boolean isEmpty(){
+		return head.get() == tail.get();
+	}
+}//EventRing end
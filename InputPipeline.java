@@ -0,0 +1,205 @@
+import java.awt.Rectangle;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import javax.swing.JComponent;
+import javax.swing.Timer;
+
+/**
+ * Moves click handling off the Event Dispatch Thread. Clicks are queued 
+ * 		in a lock-free ring and applied by a dedicated model thread, which 
+ * 		publishes an immutable SceneSnapshot after each batch. A Swing 
+ * 		timer repaints at most once per display frame, covering all 
+ * 		damage collected since the last repaint.
+ * @author Grady Barrett
+ */
+public class InputPipeline implements ActionListener {
+
+	static final int FRAME_MILLIS = 16; // time between repaints, about 60 Hz
+
+	SimpleWindowManager model; // window manager, only touched by modelThread
+	JComponent canvas; // component to repaint
+	EventRing ring = new EventRing(4096); // clicks waiting for the model thread
+	Thread modelThread; // thread applying the clicks
+	Timer frameTimer; // fires once per frame on the Event Dispatch Thread
+
+	// latest published scene, read by the painter
+	volatile SceneSnapshot snapshot;
+	
+	// damage waiting to be repainted, or null
+	AtomicReference<Rectangle> damage = new AtomicReference<Rectangle>();
+
+	/**
+	 * Constructor that publishes the first snapshot and starts the model 
+	 * 		thread and the frame timer.
+	 * @param newModel
+	 * 			window manager to be driven, must be a SnapshotSource
+	 * @param newCanvas
+	 * 			component that draws the snapshots
+	 */
+	public InputPipeline(SimpleWindowManager newModel, JComponent newCanvas){
+
+		model = newModel;
+		canvas = newCanvas;
+		snapshot = ((SnapshotSource) model).snapshot();
+
+		modelThread = new Thread(new Runnable(){
+			public void run(){
+				applyEvents();
+			}
+		}, "window-model");
+		modelThread.setDaemon(true);
+		modelThread.start();
+
+		frameTimer = new Timer(FRAME_MILLIS, this);
+		frameTimer.start();
+	}//InputPipeline end
+
+	/**
+	 * Queues a click. Called on the Event Dispatch Thread.
+	 * @param x
+	 * 			x coordinate of the click
+	 * @param y
+	 * 			y coordinate of the click
+	 */
+	public void click(int x, int y){
+		mouse(EventRing.CLICK, x, y);
+	}//click end
+
+	/**
+	 * Queues a mouse event. Called on the Event Dispatch Thread.
+	 * @param type
+	 * 			EventRing.CLICK, PRESS, DRAG or RELEASE
+	 * @param x
+	 * 			x coordinate of the mouse
+	 * @param y
+	 * 			y coordinate of the mouse
+	 */
+	public void mouse(int type, int x, int y){
+
+		long event = EventRing.event(type, x, y);
+		long stamp = WindowMetrics.ENABLED ? System.nanoTime() : 0;
+		while(!ring.offer(event, stamp)){
+			LockSupport.unpark(modelThread); // ring is full, let it drain
+			Thread.yield();
+		}
+		LockSupport.unpark(modelThread);
+	}//mouse end
+
+	/**
+	 * @return the most recently published scene
+	 */
+	public SceneSnapshot snapshot(){
+		return snapshot;
+	}
+
+	/**
+	 * Body of the model thread: waits for clicks, applies each waiting 
+	 * 		batch, then publishes a snapshot and the damage. With metrics 
+	 * 		on, each click's time from being queued until the snapshot 
+	 * 		showing it is published goes into WindowMetrics.click.
+	 */
+	void applyEvents(){
+
+		long[] batch = new long[ring.buffer.length];
+		long[] stamps = WindowMetrics.ENABLED ? new long[batch.length] : null;
+		while(true){
+			int n = ring.drain(batch, stamps);
+			if(n == 0){
+				LockSupport.park(this);
+				continue;
+			}
+			for(int i = 0; i < n; i++){
+				apply(batch[i], i + 1 < n ? batch[i + 1] : -1);
+			}//for loop end
+
+			Rectangle changed = null;
+			if(model instanceof DamageTracking){
+				changed = ((DamageTracking) model).takeDamage();
+			}else{
+				changed = new Rectangle(0, 0, canvas.getWidth(), canvas.getHeight());
+			}
+			if(changed != null){ // otherwise there is nothing to publish
+				snapshot = ((SnapshotSource) model).snapshot();
+				addDamage(changed);
+			}
+			if(WindowMetrics.ENABLED){
+				long now = System.nanoTime();
+				for(int i = 0; i < n; i++){
+					if(EventRing.type(batch[i]) == EventRing.CLICK){
+						WindowMetrics.click.record(now - stamps[i]);
+					}
+				}//for loop end
+			}
+		}//while end
+	}//applyEvents end
+
+	/**
+	 * Passes one event to the window manager.
+	 * @param event
+	 * 			packed event
+	 * @param next
+	 * 			event after it in the batch, or -1 if it is the last
+	 */
+	void apply(long event, long next){
+
+		int x = EventRing.x(event);
+		int y = EventRing.y(event);
+		switch(EventRing.type(event)){
+		case EventRing.CLICK:
+			model.handleClick(x, y);
+			break;
+		case EventRing.PRESS:
+			if(model instanceof DragHandling){
+				((DragHandling) model).handlePress(x, y);
+			}
+			break;
+		case EventRing.DRAG:
+			// a drag is followed to an absolute position, so one that is 
+			//		straight away replaced by the next can be skipped
+			if(next != -1 && EventRing.type(next) == EventRing.DRAG){
+				break;
+			}
+			if(model instanceof DragHandling){
+				((DragHandling) model).handleDrag(x, y);
+			}
+			break;
+		case EventRing.RELEASE:
+			if(model instanceof DragHandling){
+				((DragHandling) model).handleRelease(x, y);
+			}
+			break;
+		}//switch end
+	}//apply end
+
+	/**
+	 * Merges an area into the damage waiting to be repainted.
+	 * @param r
+	 * 			changed area
+	 */
+	void addDamage(Rectangle r){
+
+		while(true){
+			Rectangle old = damage.get();
+			Rectangle merged = old == null ? r : old.union(r);
+			if(damage.compareAndSet(old, merged)){
+				return;
+			}
+		}//while end
+	}//addDamage end
+
+	/**
+	 * Called by the frame timer; repaints everything damaged since the 
+	 * 		last frame with a single repaint.
+	 * @param e
+	 * 			the timer event
+	 */
+	public void actionPerformed(ActionEvent e){
+
+		Rectangle changed = damage.getAndSet(null);
+		if(changed != null){
+			canvas.repaint(changed);
+		}
+	}//actionPerformed end
+}//InputPipeline end
@@ -0,0 +1,588 @@
+import java.util.*;
+
+/**
+ * Class IntLinkedList is a double linked list of int values, the same list
+ * as KWLinkedList without boxing. Instead of one Node object per value,
+ * the values and their links are kept in three parallel int arrays, and a
+ * link is the array slot of the neighbor. Each value costs 12 bytes with
+ * no object header and no Integer, and walking the list reads memory that
+ * is packed together. Slots freed by removals are chained into a free list
+ * and reused by later adds.
+ *
+ * @author Grady Barrett
+ * */
+public class IntLinkedList {
+
+	/** The link value meaning no slot. */
+	private static final int NIL = -1;
+
+	/** The value held in each slot. */
+	private int[] value;
+
+	/** The slot after each slot, or NIL. Free slots chain through it too. */
+	private int[] next;
+
+	/** The slot before each slot, or NIL. */
+	private int[] prev;
+
+	/** The slot of the head of the list, or NIL. */
+	private int head = NIL;
+
+	/** The slot of the end of the list, or NIL. */
+	private int tail = NIL;
+
+	/** The size of the list. */
+	private int size = 0;
+
+	/** The first slot of the free list, or NIL. */
+	private int free = NIL;
+
+	/** The number of slots that have ever been used. Slots from here on
+	 * have never been handed out. */
+	private int used = 0;
+
+	/** The number of structural changes, used to make iterators fail fast. */
+	private int modCount = 0;
+
+	/** The slot most recently reached by an index seek, or NIL. */
+	private int finger = NIL;
+
+	/** The index of the finger slot. */
+	private int fingerIndex = 0;
+
+	/**
+	 * Construct an empty list with room for 16 values.
+	 */
+	public IntLinkedList() {
+		this(16);
+	}
+
+	/**
+	 * Construct an empty list.
+	 *
+	 * @param capacity
+	 *            The number of values the list can hold before it grows
+	 */
+	public IntLinkedList(int capacity) {
+		capacity = Math.max(capacity, 1);
+		value = new int[capacity];
+		next = new int[capacity];
+		prev = new int[capacity];
+	}
+
+	/**
+	 * Returns the number of values in this IntLinkedList.
+	 *
+	 * @return the number of values in this IntLinkedList
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Indicate whether the list is empty.
+	 *
+	 * @return true if the list holds no values
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Append a value.
+	 *
+	 * @param v
+	 *            The value to be appended
+	 */
+	public void add(int v) {
+		linkBefore(allocate(v), NIL);
+	}
+
+	/**
+	 * Add a value at the specified index.
+	 *
+	 * @param index
+	 *            The index at which the value is to be inserted
+	 * @param v
+	 *            The value to be inserted
+	 * @throws IndexOutOfBoundsException
+	 *             if the index is out of range (i < 0 || i > size())
+	 */
+	public void add(int index, int v) {
+		checkPosition(index);
+		int after = slotAt(index);
+		linkBefore(allocate(v), after);
+	}
+
+	/**
+	 * Get the value at position index.
+	 *
+	 * @param index
+	 *            Position of the value to be retrieved
+	 * @return The value at index
+	 * @throws IndexOutOfBoundsException
+	 *             if the index is out of range (i < 0 || i >= size())
+	 */
+	public int getInt(int index) {
+		checkIndex(index);
+		return value[slotAt(index)];
+	}
+
+	/**
+	 * Replace the value at position index.
+	 *
+	 * @param index
+	 *            Position of the value to be replaced
+	 * @param v
+	 *            The new value
+	 * @return The value that was at index
+	 * @throws IndexOutOfBoundsException
+	 *             if the index is out of range (i < 0 || i >= size())
+	 */
+	public int set(int index, int v) {
+		checkIndex(index);
+		int slot = slotAt(index);
+		int old = value[slot];
+		value[slot] = v;
+		return old;
+	}
+
+	/**
+	 * Remove the value at position index.
+	 *
+	 * @param index
+	 *            Position of the value to be removed
+	 * @return The value that was removed
+	 * @throws IndexOutOfBoundsException
+	 *             if the index is out of range (i < 0 || i >= size())
+	 */
+	public int removeAt(int index) {
+		checkIndex(index);
+		int slot = slotAt(index);
+		int old = value[slot];
+		unlink(slot);
+		return old;
+	}
+
+	/**
+	 * Remove the first occurrence of a value.
+	 *
+	 * @param v
+	 *            The value to be removed
+	 * @return true if the value was found and removed
+	 */
+	public boolean removeValue(int v) {
+		for (int slot = head; slot != NIL; slot = next[slot]) {
+			if (value[slot] == v) {
+				unlink(slot);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Find the first occurrence of a value.
+	 *
+	 * @param v
+	 *            The value to be found
+	 * @return The index of the first occurrence, or -1 if there is none
+	 */
+	public int indexOf(int v) {
+		int index = 0;
+		for (int slot = head; slot != NIL; slot = next[slot]) {
+			if (value[slot] == v) {
+				return index;
+			}
+			index++;
+		}
+		return -1;
+	}
+
+	/**
+	 * Indicate whether the list holds a value.
+	 *
+	 * @param v
+	 *            The value to be found
+	 * @return true if the list holds v
+	 */
+	public boolean contains(int v) {
+		return indexOf(v) >= 0;
+	}
+
+	/**
+	 * Remove every value. The arrays are kept for reuse, so this takes
+	 * constant time.
+	 */
+	public void clear() {
+		head = NIL;
+		tail = NIL;
+		size = 0;
+		free = NIL;
+		used = 0;
+		finger = NIL;
+		modCount++;
+	}
+
+	/**
+	 * Copy the values into a new array in list order.
+	 *
+	 * @return The values of the list
+	 */
+	public int[] toArray() {
+		int[] copy = new int[size];
+		int i = 0;
+		for (int slot = head; slot != NIL; slot = next[slot]) {
+			copy[i++] = value[slot];
+		}
+		return copy;
+	}
+
+	/**
+	 * Return an iterator positioned before the first value.
+	 *
+	 * @return an iterator over the whole list
+	 */
+	public IntListIterator listIterator() {
+		return new IntListIter(0);
+	}
+
+	/**
+	 * Return an iterator positioned before the value at index.
+	 *
+	 * @param index
+	 *            The index of the first value to be returned by nextInt
+	 * @return an iterator starting at index
+	 * @throws IndexOutOfBoundsException
+	 *             if the index is out of range (i < 0 || i > size())
+	 */
+	public IntListIterator listIterator(int index) {
+		return new IntListIter(index);
+	}
+
+	/**
+	 * Return the values in list order, as AbstractCollection does.
+	 *
+	 * @return the values in square brackets, separated by commas
+	 */
+	public String toString() {
+		StringBuilder sb = new StringBuilder("[");
+		for (int slot = head; slot != NIL; slot = next[slot]) {
+			if (slot != head) {
+				sb.append(", ");
+			}
+			sb.append(value[slot]);
+		}
+		return sb.append(']').toString();
+	}
+
+	/**
+	 * Take a slot for a value, from the free list if it has one, growing
+	 * the arrays if every slot is in use.
+	 *
+	 * @param v
+	 *            The value to be stored
+	 * @return the slot, not yet linked into the list
+	 */
+	private int allocate(int v) {
+		int slot = free;
+		if (slot != NIL) {
+			free = next[slot];
+		} else {
+			if (used == value.length) {
+				int capacity = value.length * 2;
+				value = Arrays.copyOf(value, capacity);
+				next = Arrays.copyOf(next, capacity);
+				prev = Arrays.copyOf(prev, capacity);
+			}
+			slot = used++;
+		}
+		value[slot] = v;
+		return slot;
+	}
+
+	/**
+	 * Link a slot into the list just before another slot.
+	 *
+	 * @param slot
+	 *            The slot to be linked
+	 * @param after
+	 *            The slot that is to follow it, or NIL to append
+	 */
+	private void linkBefore(int slot, int after) {
+		int before = after == NIL ? tail : prev[after];
+		prev[slot] = before;
+		next[slot] = after;
+		if (before == NIL) {
+			head = slot;
+		} else {
+			next[before] = slot;
+		}
+		if (after == NIL) {
+			tail = slot;
+		} else {
+			prev[after] = slot;
+		}
+		finger = NIL; // Indexes after the new slot have shifted.
+		size++;
+		modCount++;
+	}
+
+	/**
+	 * Unlink a slot from the list and put it on the free list.
+	 *
+	 * @param slot
+	 *            The slot to be removed
+	 */
+	private void unlink(int slot) {
+		int before = prev[slot];
+		int after = next[slot];
+		if (before == NIL) {
+			head = after;
+		} else {
+			next[before] = after;
+		}
+		if (after == NIL) {
+			tail = before;
+		} else {
+			prev[after] = before;
+		}
+		next[slot] = free;
+		free = slot;
+		finger = NIL; // Indexes after the removed slot have shifted.
+		size--;
+		modCount++;
+	}
+
+	/**
+	 * Find the slot at an index, starting from whichever of the head, the
+	 * tail and the finger is closest, and remember it as the finger.
+	 *
+	 * @param index
+	 *            The index of the slot, 0 <= index <= size
+	 * @return The slot at index, or NIL if index == size
+	 */
+	private int slotAt(int index) {
+		// Special case of last value.
+		if (index == size) {
+			return NIL;
+		}
+		int slot = head;
+		int i = 0;
+		if (index >= size / 2) { // Closer to the end
+			slot = tail;
+			i = size - 1;
+		}
+		if (finger != NIL && Math.abs(index - fingerIndex) < Math.abs(index - i)) {
+			slot = finger;
+			i = fingerIndex;
+		}
+		for (; i < index; i++) {
+			slot = next[slot];
+		}
+		for (; i > index; i--) {
+			slot = prev[slot];
+		}
+		// Remember where we landed for the next seek.
+		finger = slot;
+		fingerIndex = index;
+		return slot;
+	}
+
+	/**
+	 * Check an index of an existing value.
+	 *
+	 * @param index
+	 *            The index to be checked
+	 * @throws IndexOutOfBoundsException
+	 *             if the index is out of range (i < 0 || i >= size())
+	 */
+	private void checkIndex(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Invalid index " + index);
+		}
+	}
+
+	/**
+	 * Check an index at which a value may be inserted.
+	 *
+	 * @param index
+	 *            The index to be checked
+	 * @throws IndexOutOfBoundsException
+	 *             if the index is out of range (i < 0 || i > size())
+	 */
+	private void checkPosition(int index) {
+		if (index < 0 || index > size) {
+			throw new IndexOutOfBoundsException("Invalid index " + index);
+		}
+	}
+
+	/** Inner class to implement the IntListIterator interface. */
+	private class IntListIter implements IntListIterator {
+		/** The slot of the next value, or NIL. */
+		private int nextSlot;
+
+		/** The slot of the last value returned, or NIL. */
+		private int lastReturned = NIL;
+
+		/** The index of the next value. The iterator is considered to be
+		 * positioned just before the value at index. */
+		private int index;
+
+		/** The modCount this iterator expects the list to have. If it
+		 * differs, the list was changed behind the iterator's back. */
+		private int expectedModCount = modCount;
+
+		/**
+		 * Construct an IntListIter that will reference the ith value.
+		 *
+		 * @param i
+		 *            The index of the value to be referenced
+		 */
+		private IntListIter(int i) {
+			checkPosition(i);
+			index = i;
+			nextSlot = slotAt(i);
+		}
+
+		/**
+		 * Indicate whether movement forward is defined.
+		 *
+		 * @return true if call to nextInt will not throw an exception
+		 */
+		public boolean hasNext() {
+			return index < size;
+		}
+
+		/**
+		 * Move the iterator forward and return the next value.
+		 *
+		 * @return The next value in the list
+		 * @throws NoSuchElementException
+		 *             if there is no such value
+		 */
+		public int nextInt() {
+			checkForComodification();
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			lastReturned = nextSlot;
+			nextSlot = next[nextSlot];
+			index++;
+			return value[lastReturned];
+		}
+
+		/**
+		 * Indicate whether movement backward is defined.
+		 *
+		 * @return true if call to previousInt will not throw an exception
+		 */
+		public boolean hasPrevious() {
+			return index > 0;
+		}
+
+		/**
+		 * Move the iterator backward and return the previous value.
+		 *
+		 * @return The previous value in the list
+		 * @throws NoSuchElementException
+		 *             if there is no such value
+		 */
+		public int previousInt() {
+			checkForComodification();
+			if (!hasPrevious()) {
+				throw new NoSuchElementException();
+			}
+			nextSlot = nextSlot == NIL ? tail : prev[nextSlot];
+			lastReturned = nextSlot;
+			index--;
+			return value[lastReturned];
+		}
+
+		/**
+		 * Return the index of the next value to be returned by nextInt
+		 *
+		 * @return the index of the next value to be returned by nextInt
+		 */
+		public int nextIndex() {
+			return index;
+		}
+
+		/**
+		 * Return the index of the next value to be returned by previousInt
+		 *
+		 * @return the index of the next value to be returned by previousInt
+		 */
+		public int previousIndex() {
+			return index - 1;
+		}
+
+		/**
+		 * Add a new value between the value that will be returned by
+		 * nextInt and the value that will be returned by previousInt.
+		 *
+		 * @param v
+		 *            The value to be inserted
+		 */
+		public void add(int v) {
+			checkForComodification();
+			linkBefore(allocate(v), nextSlot);
+			index++;
+			lastReturned = NIL;
+			expectedModCount = modCount;
+		}
+
+		/**
+		 * Remove the last value returned. This can only be done once per
+		 * call to nextInt or previousInt.
+		 *
+		 * @throws IllegalStateException
+		 *             if nextInt or previousInt was not called prior to
+		 *             calling this method
+		 */
+		public void remove() {
+			checkForComodification();
+			if (lastReturned == NIL) {
+				throw new IllegalStateException();
+			}
+			if (lastReturned == nextSlot) { // previousInt was called
+				nextSlot = next[lastReturned];
+			} else { // nextInt was called
+				index--;
+			}
+			unlink(lastReturned);
+			lastReturned = NIL;
+			expectedModCount = modCount;
+		}
+
+		/**
+		 * Replace the last value returned.
+		 *
+		 * @param v
+		 *            The new value
+		 * @throws IllegalStateException
+		 *             if nextInt or previousInt was not called prior to
+		 *             calling this method
+		 */
+		public void set(int v) {
+			checkForComodification();
+			if (lastReturned == NIL) {
+				throw new IllegalStateException();
+			}
+			value[lastReturned] = v;
+		}
+
+		/**
+		 * Checks that the list has not been structurally changed except
+		 * through this iterator since the iterator was created.
+		 *
+		 * @throws ConcurrentModificationException
+		 *             if the list was changed by someone else
+		 */
+		private void checkForComodification() {
+			if (modCount != expectedModCount) {
+				throw new ConcurrentModificationException();
+			}
+		}
+	} // end class IntListIter
+}
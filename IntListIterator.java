@@ -0,0 +1,67 @@
+/**
+ * A list iterator over int values, like ListIterator but without boxing
+ * each value in an Integer.
+ * @author Grady Barrett
+ */
+public interface IntListIterator {
+
+	/**
+	 * @return true if a call to nextInt will not throw an exception
+	 */
+	boolean hasNext();
+
+	/**
+	 * Moves the iterator forward and returns the next value.
+	 * @return the next value in the list
+	 * @throws java.util.NoSuchElementException
+	 * 			if there is no next value
+	 */
+	int nextInt();
+
+	/**
+	 * @return true if a call to previousInt will not throw an exception
+	 */
+	boolean hasPrevious();
+
+	/**
+	 * Moves the iterator backward and returns the previous value.
+	 * @return the previous value in the list
+	 * @throws java.util.NoSuchElementException
+	 * 			if there is no previous value
+	 */
+	int previousInt();
+
+	/**
+	 * @return the index of the value the next call to nextInt returns
+	 */
+	int nextIndex();
+
+	/**
+	 * @return the index of the value the next call to previousInt returns
+	 */
+	int previousIndex();
+
+	/**
+	 * Inserts a value just before the value the next call to nextInt
+	 * 		would return.
+	 * @param value
+	 * 			value to be inserted
+	 */
+	void add(int value);
+
+	/**
+	 * Removes the value last returned by nextInt or previousInt.
+	 * @throws IllegalStateException
+	 * 			if neither was called since the last add or remove
+	 */
+	void remove();
+
+	/**
+	 * Replaces the value last returned by nextInt or previousInt.
+	 * @param value
+	 * 			new value
+	 * @throws IllegalStateException
+	 * 			if neither was called since the last add or remove
+	 */
+	void set(int value);
+}
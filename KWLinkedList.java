@@ -1,4 +1,6 @@
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 /**
  * Class KWLinkedList implements a double linked list and a ListIterator.
@@ -16,6 +18,24 @@ public class KWLinkedList<E> extends AbstractSequentialList<E> {
 	/** The size of the list. */
 	private int size = 0;
 
+	/** The node most recently reached by an index seek, or null. */
+	private Node<E> finger = null;
+
+	/** The index of the finger node. */
+	private int fingerIndex = 0;
+
+	/** Whether index seeks may start from the finger node. */
+	private boolean fingerEnabled = true;
+
+	/** Unlinked nodes kept for reuse, chained through next, or null. */
+	private Node<E> freeNodes = null;
+
+	/** The number of nodes in freeNodes. */
+	private int freeCount = 0;
+
+	/** The most nodes freeNodes may hold. Zero turns pooling off. */
+	private int maxFreeNodes = 0;
+
 	/**
 	 * Add an item at the specified index.
 	 * 
@@ -77,6 +97,10 @@ public class KWLinkedList<E> extends AbstractSequentialList<E> {
 		 * be positioned just before the item at index. */
 		private int index = 0;
 
+		/** The modCount this iterator expects the list to have. If it
+		 * differs, the list was changed behind the iterator's back. */
+		private int expectedModCount = modCount;
+
 		/**
 		 * Construct a KWListIter that will reference the ith item.
 		 * 
@@ -84,21 +108,34 @@ public class KWLinkedList<E> extends AbstractSequentialList<E> {
 		 *            The index of the item to be referenced
 		 */
 		public KWListIter(int i) {
+			reset(i);
+		}
+
+		/**
+		 * Move the iterator to the ith item and forget any earlier changes
+		 * to the list, as if it had just been constructed.
+		 * 
+		 * @param i
+		 *            The index of the item to be referenced
+		 */
+		private void reset(int i) {
 			// Validate i parameter.
 			if (i < 0 || i > size) {
 				throw new IndexOutOfBoundsException("Invalid index " + i);
 			}
 			lastItemReturned = null; // No item returned yet.
-			// Special case of last item.
-			if (i == size) {
-				index = size;
-				nextItem = null;
-			} else { // Start at the beginning
-				nextItem = head;
-				for (index = 0; index < i; index++) {
-					nextItem = nextItem.next;
-				}
-			}
+			index = i;
+			nextItem = nodeAt(i);
+			expectedModCount = modCount;
+		}
+
+		/**
+		 * Return the list this iterator walks.
+		 * 
+		 * @return the list this iterator walks
+		 */
+		private KWLinkedList<E> list() {
+			return KWLinkedList.this;
 		}
 
 		/**
@@ -118,6 +155,7 @@ public class KWLinkedList<E> extends AbstractSequentialList<E> {
 		 *             if there is no such object
 		 */
 		public E next() {
+			checkForComodification();
 			if (!hasNext()) {
 				throw new NoSuchElementException();
 			}
@@ -163,6 +201,7 @@ public class KWLinkedList<E> extends AbstractSequentialList<E> {
 		 *             if there is no such object
 		 */
 		public E previous() {
+			checkForComodification();
 			if (!hasPrevious()) {
 				throw new NoSuchElementException();
 			}
@@ -185,12 +224,13 @@ public class KWLinkedList<E> extends AbstractSequentialList<E> {
 		 *            The item to be inserted
 		 */
 		public void add(E obj) {
+			checkForComodification();
 			if (head == null) { // Add to an empty list.
-				head = new Node<E>(obj);
+				head = newNode(obj);
 				tail = head;
 			} else if (nextItem == head) { // Insert at head.
 				// Create a new node.
-				Node<E> newNode = new Node<E>(obj);
+				Node<E> newNode = newNode(obj);
 				// Link it to the nextItem.
 				newNode.next = nextItem; // Step 1
 				// Link nextItem to the new node.
@@ -199,7 +239,7 @@ public class KWLinkedList<E> extends AbstractSequentialList<E> {
 				head = newNode; // Step 3
 			} else if (nextItem == null) { // Insert at tail.
 				// Create a new node.
-				Node<E> newNode = new Node<E>(obj);
+				Node<E> newNode = newNode(obj);
 				// Link the tail to the new node.
 				tail.next = newNode; // Step 1
 				// Link the new node to the tail.
@@ -208,7 +248,7 @@ public class KWLinkedList<E> extends AbstractSequentialList<E> {
 				tail = newNode; // Step 3
 			} else { // Insert into the middle.
 				// Create a new node.
-				Node<E> newNode = new Node<E>(obj);
+				Node<E> newNode = newNode(obj);
 				// Link it to nextItem.prev.
 				newNode.prev = nextItem.prev; // Step 1
 				nextItem.prev.next = newNode; // Step 2
@@ -217,9 +257,12 @@ public class KWLinkedList<E> extends AbstractSequentialList<E> {
 				nextItem.prev = newNode; // Step 4
 			}
 			// Increase size and index and set lastItemReturned.
+			finger = null; // Indexes after the new node have shifted.
 			size++;
 			index++;
 			lastItemReturned = null;
+			modCount++;
+			expectedModCount++;
 		} // End of method add.
 
 		/**
@@ -231,6 +274,8 @@ public class KWLinkedList<E> extends AbstractSequentialList<E> {
 		 *             method
 		 */
 		public void remove() {	
+			checkForComodification();
+			
 			if(lastItemReturned == null){
 				throw new IllegalStateException();
 			}
@@ -292,6 +337,19 @@ public class KWLinkedList<E> extends AbstractSequentialList<E> {
 				lastItemReturned.next.prev = lastItemReturned.prev;
 				size -= 1;
 			}
+			
+			// If .previous() was used the iterator still points at the 
+			//		removed node, so move it on to the node that replaced it.
+			if(lastItemReturned == nextItem){
+				nextItem = lastItemReturned.next;
+			}
+			recycle(lastItemReturned);
+			lastItemReturned = null;
+			
+			// Indexes after the removed node shift, so forget the finger.
+			finger = null;
+			modCount++;
+			expectedModCount++;
 		}// end of remove method
 
 		/**
@@ -303,15 +361,170 @@ public class KWLinkedList<E> extends AbstractSequentialList<E> {
 		 *            	calling this method			
 		 */
 		public void set(E e) {
+			checkForComodification();
 			if(lastItemReturned == null){
 				throw new IllegalStateException();
 			}
 			// replaces last item returned data with e
 			lastItemReturned.data = e; 
 		}
+
+		/**
+		 * Checks that the list has not been structurally changed except 
+		 * through this iterator since the iterator was created.
+		 * 
+		 * @throws ConcurrentModificationException
+		 *             if the list was changed by someone else
+		 */
+		private void checkForComodification() {
+			if (modCount != expectedModCount) {
+				throw new ConcurrentModificationException();
+			}
+		}
 		
 	} // end class KWListIter
 
+	/**
+	 * Inner class to walk and split the list for streams. It binds to the
+	 * list on first use, and a split hands off the first half of the nodes
+	 * it has left, so both halves walk the shared nodes without copying.
+	 */
+	private class KWSpliterator implements Spliterator<E> {
+		/** The next node to be returned, once bound. */
+		private Node<E> current;
+
+		/** The number of nodes left to return, or -1 if not yet bound. */
+		private int remaining;
+
+		/** The modCount this spliterator expects the list to have. */
+		private int expectedModCount;
+
+		/**
+		 * Construct a KWSpliterator over a run of nodes.
+		 * 
+		 * @param first
+		 *            The first node of the run
+		 * @param count
+		 *            The number of nodes in the run, or -1 to bind to the
+		 *            whole list on first use
+		 * @param expected
+		 *            The modCount of the list when the run was taken
+		 */
+		private KWSpliterator(Node<E> first, int count, int expected) {
+			current = first;
+			remaining = count;
+			expectedModCount = expected;
+		}
+
+		/**
+		 * Binds to the whole list if this is the first use.
+		 */
+		private void bind() {
+			if (remaining < 0) {
+				current = head;
+				remaining = size;
+				expectedModCount = modCount;
+			}
+		}
+
+		/**
+		 * Pass the next item to action.
+		 * 
+		 * @param action
+		 *            The action to be performed on the item
+		 * @return false if no items were left
+		 */
+		public boolean tryAdvance(Consumer<? super E> action) {
+			Objects.requireNonNull(action);
+			bind();
+			if (remaining == 0) {
+				return false;
+			}
+			checkForComodification();
+			E data = current.data;
+			current = current.next;
+			remaining--;
+			action.accept(data);
+			return true;
+		}
+
+		/**
+		 * Pass every item left to action.
+		 * 
+		 * @param action
+		 *            The action to be performed on each item
+		 */
+		public void forEachRemaining(Consumer<? super E> action) {
+			Objects.requireNonNull(action);
+			bind();
+			Node<E> node = current;
+			int n = remaining;
+			current = null;
+			remaining = 0;
+			// Stop at once if the list changes, as the links may be gone.
+			for (; n > 0 && modCount == expectedModCount; n--) {
+				action.accept(node.data);
+				node = node.next;
+			}
+			checkForComodification();
+		}
+
+		/**
+		 * Split off the first half of the items left. Finding the middle
+		 * takes a walk over that half, which is small next to the work of
+		 * handing each item to a parallel stream.
+		 * 
+		 * @return a spliterator over the first half, or null if fewer than
+		 *         two items are left
+		 */
+		public Spliterator<E> trySplit() {
+			bind();
+			if (remaining < 2) {
+				return null;
+			}
+			checkForComodification();
+			int half = remaining / 2;
+			Node<E> first = current;
+			for (int i = 0; i < half; i++) {
+				current = current.next;
+			}
+			remaining -= half;
+			return new KWSpliterator(first, half, expectedModCount);
+		}
+
+		/**
+		 * Return the exact number of items left.
+		 * 
+		 * @return the number of items left
+		 */
+		public long estimateSize() {
+			bind();
+			return remaining;
+		}
+
+		/**
+		 * Return the characteristics of this spliterator.
+		 * 
+		 * @return ORDERED, SIZED and SUBSIZED
+		 */
+		public int characteristics() {
+			return Spliterator.ORDERED | Spliterator.SIZED | Spliterator.SUBSIZED;
+		}
+
+		/**
+		 * Checks that the list has not been structurally changed since
+		 * this spliterator was bound.
+		 * 
+		 * @throws ConcurrentModificationException
+		 *             if the list was changed
+		 */
+		private void checkForComodification() {
+			if (modCount != expectedModCount) {
+				throw new ConcurrentModificationException();
+			}
+		}
+	} // end class KWSpliterator
+
 	public ListIterator<E> listIterator(int index) {
 		
 		 KWListIter iter = new KWListIter(index);
@@ -319,6 +532,378 @@ public class KWLinkedList<E> extends AbstractSequentialList<E> {
 		return iter;
 	}
 
+	/**
+	 * Return a list iterator starting at the specified index, reusing an
+	 * iterator from an earlier call when possible. A loop that runs on
+	 * every frame can keep one iterator and pass it back in each time, so
+	 * it allocates nothing after the first call.
+	 * 
+	 * @param index
+	 *            The index of the first item to be returned by next
+	 * @param reuse
+	 *            An iterator from an earlier call on this list, or null
+	 * @return reuse moved to index, or a new iterator if reuse is null or
+	 *         came from somewhere else
+	 * @throws IndexOutOfBoundsException
+	 *             if the index is out of range (i < 0 || i > size())
+	 */
+	@SuppressWarnings("unchecked")
+	public ListIterator<E> listIterator(int index, ListIterator<E> reuse) {
+		if (reuse instanceof KWLinkedList.KWListIter) {
+			KWListIter iter = (KWListIter) reuse;
+			if (iter.list() == this) {
+				iter.reset(index);
+				return iter;
+			}
+		}
+		return new KWListIter(index);
+	}
+
+	/**
+	 * Turns node pooling on or off. When on, nodes unlinked by remove,
+	 * removeIf and clear are kept and reused by later adds instead of
+	 * being left to the garbage collector, so a list whose size goes up
+	 * and down stops allocating once the pool has filled. Pooled nodes
+	 * drop their items, so nothing is kept alive by the pool.
+	 * 
+	 * @param maxNodes
+	 *            The most unlinked nodes to keep, or 0 to turn pooling off
+	 *            and release the pool
+	 */
+	public void setNodePooling(int maxNodes) {
+		maxFreeNodes = Math.max(0, maxNodes);
+		while (freeCount > maxFreeNodes) {
+			freeNodes = freeNodes.next;
+			freeCount--;
+		}
+	}
+
+	/**
+	 * Return a node holding an item, taken from the pool if it has one.
+	 * 
+	 * @param dataItem
+	 *            The data value
+	 * @return an unlinked node holding dataItem
+	 */
+	private Node<E> newNode(E dataItem) {
+		Node<E> node = freeNodes;
+		if (node == null) {
+			return new Node<E>(dataItem);
+		}
+		freeNodes = node.next;
+		freeCount--;
+		node.next = null;
+		node.data = dataItem;
+		return node;
+	}
+
+	/**
+	 * Put an unlinked node in the pool if pooling is on and the pool has
+	 * room.
+	 * 
+	 * @param node
+	 *            The node, already unlinked from the list
+	 */
+	private void recycle(Node<E> node) {
+		if (freeCount < maxFreeNodes) {
+			node.data = null;
+			node.prev = null;
+			node.next = freeNodes;
+			freeNodes = node;
+			freeCount++;
+		}
+	}
+
+	/**
+	 * Find the node at an index, starting from whichever of the head, the
+	 * tail and the finger is closest, and remember it as the finger.
+	 * 
+	 * @param i
+	 *            The index of the node, 0 <= i <= size
+	 * @return The node at i, or null if i == size
+	 */
+	private Node<E> nodeAt(int i) {
+		// Special case of last item.
+		if (i == size) {
+			return null;
+		}
+		Node<E> start = head;
+		int startIndex = 0;
+		if (i >= size / 2) { // Closer to the end
+			start = tail;
+			startIndex = size - 1;
+		}
+		if (fingerEnabled && finger != null
+				&& Math.abs(i - fingerIndex) < Math.abs(i - startIndex)) {
+			start = finger;
+			startIndex = fingerIndex;
+		}
+		Node<E> node = start;
+		for (int index = startIndex; index < i; index++) {
+			node = node.next;
+		}
+		for (int index = startIndex; index > i; index--) {
+			node = node.prev;
+		}
+		// Remember where we landed for the next seek.
+		finger = node;
+		fingerIndex = i;
+		return node;
+	}
+
+	/**
+	 * Link a chain of nodes in before the node at index.
+	 * 
+	 * @param index
+	 *            The index at which the chain is to be inserted
+	 * @param first
+	 *            The first node of the chain
+	 * @param last
+	 *            The last node of the chain
+	 * @param count
+	 *            The number of nodes in the chain
+	 */
+	private void linkChain(int index, Node<E> first, Node<E> last, int count) {
+		Node<E> after = nodeAt(index);
+		Node<E> before = after == null ? tail : after.prev;
+		first.prev = before;
+		last.next = after;
+		if (before == null) {
+			head = first;
+		} else {
+			before.next = first;
+		}
+		if (after == null) {
+			tail = last;
+		} else {
+			after.prev = last;
+		}
+		size += count;
+		structureChanged();
+	}
+
+	/**
+	 * Record a structural change: open iterators fail and the finger is
+	 * dropped.
+	 */
+	private void structureChanged() {
+		finger = null;
+		modCount++;
+	}
+
+	/**
+	 * Insert every item of a collection at the specified index. The new
+	 * nodes are linked to each other first and then linked into the list
+	 * in one step, so only one seek is made.
+	 * 
+	 * @param index
+	 *            The index at which the first item is to be inserted
+	 * @param c
+	 *            The items to be inserted
+	 * @return true if the list changed
+	 * @throws IndexOutOfBoundsException
+	 *             if the index is out of range (i < 0 || i > size())
+	 */
+	@SuppressWarnings("unchecked")
+	public boolean addAll(int index, Collection<? extends E> c) {
+		if (index < 0 || index > size) {
+			throw new IndexOutOfBoundsException("Invalid index " + index);
+		}
+		// Copy first, so adding the list to itself works.
+		Object[] items = c.toArray();
+		if (items.length == 0) {
+			return false;
+		}
+		Node<E> first = newNode((E) items[0]);
+		Node<E> last = first;
+		for (int i = 1; i < items.length; i++) {
+			Node<E> newNode = newNode((E) items[i]);
+			newNode.prev = last;
+			last.next = newNode;
+			last = newNode;
+		}
+		linkChain(index, first, last, items.length);
+		return true;
+	}
+
+	/**
+	 * Append every item of a collection.
+	 * 
+	 * @param c
+	 *            The items to be appended
+	 * @return true if the list changed
+	 */
+	public boolean addAll(Collection<? extends E> c) {
+		return addAll(size, c);
+	}
+
+	/**
+	 * Move every node of another list to the end of this one, leaving the
+	 * other list empty. No nodes are copied, so this takes constant time.
+	 * 
+	 * @param other
+	 *            The list to be emptied into this one
+	 * @throws IllegalArgumentException
+	 *             if other is this list
+	 */
+	public void splice(KWLinkedList<E> other) {
+		splice(size, other);
+	}
+
+	/**
+	 * Move every node of another list into this one at the specified
+	 * index, leaving the other list empty. No nodes are copied, so the
+	 * only cost is the seek to index.
+	 * 
+	 * @param index
+	 *            The index at which the first moved item is to be inserted
+	 * @param other
+	 *            The list to be emptied into this one
+	 * @throws IndexOutOfBoundsException
+	 *             if the index is out of range (i < 0 || i > size())
+	 * @throws IllegalArgumentException
+	 *             if other is this list
+	 */
+	public void splice(int index, KWLinkedList<E> other) {
+		if (index < 0 || index > size) {
+			throw new IndexOutOfBoundsException("Invalid index " + index);
+		}
+		if (other == this) {
+			throw new IllegalArgumentException("Cannot splice a list into itself");
+		}
+		if (other.size == 0) {
+			return;
+		}
+		linkChain(index, other.head, other.tail, other.size);
+		other.head = null;
+		other.tail = null;
+		other.size = 0;
+		other.structureChanged();
+	}
+
+	/**
+	 * Remove every item. The nodes are dropped all at once rather than
+	 * unlinked one at a time, unless node pooling is on and the pool has
+	 * room for them.
+	 */
+	public void clear() {
+		Node<E> node = head;
+		while (node != null && freeCount < maxFreeNodes) {
+			Node<E> next = node.next;
+			recycle(node);
+			node = next;
+		}
+		head = null;
+		tail = null;
+		size = 0;
+		structureChanged();
+	}
+
+	/**
+	 * Remove every item that matches a filter in a single pass. Each run
+	 * of neighboring matches is unlinked with one change to the links on
+	 * either side of it.
+	 * 
+	 * @param filter
+	 *            Returns true for items to be removed
+	 * @return true if any items were removed
+	 * @throws ConcurrentModificationException
+	 *             if the filter changed the list
+	 */
+	public boolean removeIf(Predicate<? super E> filter) {
+		Objects.requireNonNull(filter);
+		int expected = modCount;
+		boolean removed = false;
+		Node<E> node = head;
+		while (node != null) {
+			if (!filter.test(node.data)) {
+				node = node.next;
+				continue;
+			}
+			// Find the first node after the run that is kept.
+			Node<E> before = node.prev;
+			Node<E> after = node.next;
+			int run = 1;
+			while (after != null && filter.test(after.data)) {
+				after = after.next;
+				run++;
+			}
+			if (modCount != expected) {
+				throw new ConcurrentModificationException();
+			}
+			// Unlink the whole run.
+			if (before == null) {
+				head = after;
+			} else {
+				before.next = after;
+			}
+			if (after == null) {
+				tail = before;
+			} else {
+				after.prev = before;
+			}
+			while (node != after && freeCount < maxFreeNodes) {
+				Node<E> next = node.next;
+				recycle(node);
+				node = next;
+			}
+			size -= run;
+			structureChanged();
+			expected = modCount;
+			removed = true;
+			// The node after the run is already known to be kept.
+			node = after == null ? null : after.next;
+		}
+		if (modCount != expected) {
+			throw new ConcurrentModificationException();
+		}
+		return removed;
+	}
+
+	/**
+	 * Perform an action on every item in order, walking the nodes directly
+	 * without creating an iterator.
+	 * 
+	 * @param action
+	 *            The action to be performed on each item
+	 * @throws ConcurrentModificationException
+	 *             if the action changed the list
+	 */
+	public void forEach(Consumer<? super E> action) {
+		Objects.requireNonNull(action);
+		int expected = modCount;
+		for (Node<E> node = head; node != null && modCount == expected; node = node.next) {
+			action.accept(node.data);
+		}
+		if (modCount != expected) {
+			throw new ConcurrentModificationException();
+		}
+	}
+
+	/**
+	 * Return a spliterator over the items. It reports an exact size and
+	 * splits in half, so parallel streams can share out the list. It binds
+	 * to the list when first used rather than when created.
+	 * 
+	 * @return a late-binding ORDERED, SIZED and SUBSIZED spliterator
+	 */
+	public Spliterator<E> spliterator() {
+		return new KWSpliterator(null, -1, 0);
+	}
+
+	/**
+	 * Turns the finger cache on or off. When on, the node reached by the
+	 * last index seek is remembered, so sequential calls such as get(i)
+	 * followed by get(i + 1) take one step instead of a walk from an end.
+	 * 
+	 * @param enabled
+	 *            true to let seeks start from the cached node
+	 */
+	public void setFingerEnabled(boolean enabled) {
+		fingerEnabled = enabled;
+		finger = null;
+	}
+
 	/**
 	 * Returns the number of elements in this KWLinkedList.
 	 * 
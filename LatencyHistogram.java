@@ -0,0 +1,188 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of latencies in nanoseconds with a fixed relative precision,
+ * 		in the style of HdrHistogram. Values below 32 get a bucket each,
+ * 		and every power of two above that is split into 32 buckets, so a
+ * 		recorded value is off by at most about 3% and the whole range up
+ * 		to over an hour fits in about 1200 counters. Recording is a few
+ * 		shifts and one atomic add, and is safe from any thread.
+ * @author Grady Barrett
+ */
+public class LatencyHistogram implements LatencyHistogramMBean {
+
+	static final int SUB_BITS = 5; // log2 of the buckets per power of two
+	static final int SUB_BUCKETS = 1 << SUB_BITS; // buckets per power of two
+	static final int MAX_EXPONENT = 42; // highest power of two tracked, about 73 minutes
+
+	String name; // name used in the log line and JMX
+
+	// number of values recorded in each bucket
+	AtomicLongArray counts = new AtomicLongArray((MAX_EXPONENT - SUB_BITS + 2) * SUB_BUCKETS);
+
+	LongAdder count = new LongAdder(); // number of values recorded
+	LongAdder sum = new LongAdder(); // sum of the values recorded
+	LongAccumulator max = new LongAccumulator(Math::max, 0); // largest value recorded
+
+	/**
+	 * Constructor for an empty histogram.
+	 * @param newName
+	 * 			name used in the log line and JMX
+	 */
+	public LatencyHistogram(String newName){
+		name = newName;
+	}//LatencyHistogram end
+
+	/**
+	 * Records one latency.
+	 * @param nanos
+	 * 			latency in nanoseconds
+	 */
+	public void record(long nanos){
+
+		if(nanos < 0){
+			nanos = 0; // the clock is not allowed to go backwards, but be safe
+		}
+		counts.incrementAndGet(bucketOf(nanos));
+		count.increment();
+		sum.add(nanos);
+		max.accumulate(nanos);
+	}//record end
+
+	/**
+	 * @param value
+	 * 			latency in nanoseconds, not negative
+	 * @return the bucket counting value
+	 */
+	static int bucketOf(long value){
+
+		if(value < SUB_BUCKETS){
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		if(exponent > MAX_EXPONENT){
+			return (MAX_EXPONENT - SUB_BITS + 2) * SUB_BUCKETS - 1; // off the top
+		}
+		// the bits after the leading one pick the bucket within the power
+		int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+	}//bucketOf end
+
+	/**
+	 * @param bucket
+	 * 			bucket number
+	 * @return the largest value counted in the bucket
+	 */
+	static long highestValueOf(int bucket){
+
+		if(bucket < SUB_BUCKETS){
+			return bucket;
+		}
+		int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+		long low = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - SUB_BITS);
+		return low + (1L << (exponent - SUB_BITS)) - 1;
+	}//highestValueOf end
+
+	/**
+	 * @param percentile
+	 * 			percentile wanted, from 0 to 100
+	 * @return the latency in nanoseconds that the given percentage of
+	 * 		recorded values are at or below, or 0 if nothing was recorded
+	 */
+	public long percentile(double percentile){
+
+		long total = 0;
+		long[] snapshot = new long[counts.length()];
+		for(int i = 0; i < snapshot.length; i++){
+			snapshot[i] = counts.get(i);
+			total += snapshot[i];
+		}
+		if(total == 0){
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+		long seen = 0;
+		for(int i = 0; i < snapshot.length; i++){
+			seen += snapshot[i];
+			if(seen >= rank){
+				return Math.min(highestValueOf(i), max.get());
+			}
+		}//for loop end
+		return max.get();
+	}//percentile end
+
+	/**
+	 * @return the number of values recorded
+	 */
+	public long getCount(){
+		return count.sum();
+	}
+
+	/**
+	 * @return the mean latency in microseconds
+	 */
+	public double getMeanMicros(){
+		long n = count.sum();
+		return n == 0 ? 0 : sum.sum() / 1000.0 / n;
+	}
+
+	/**
+	 * @return the median latency in microseconds
+	 */
+	public double getP50Micros(){
+		return percentile(50) / 1000.0;
+	}
+
+	/**
+	 * @return the 90th percentile latency in microseconds
+	 */
+	public double getP90Micros(){
+		return percentile(90) / 1000.0;
+	}
+
+	/**
+	 * @return the 99th percentile latency in microseconds
+	 */
+	public double getP99Micros(){
+		return percentile(99) / 1000.0;
+	}
+
+	/**
+	 * @return the 99.9th percentile latency in microseconds
+	 */
+	public double getP999Micros(){
+		return percentile(99.9) / 1000.0;
+	}
+
+	/**
+	 * @return the largest latency recorded in microseconds
+	 */
+	public double getMaxMicros(){
+		return max.get() / 1000.0;
+	}
+
+	/**
+	 * Forgets everything recorded. Values recorded while this runs may
+	 * 		be partly kept.
+	 */
+	public void reset(){
+
+		for(int i = 0; i < counts.length(); i++){
+			counts.set(i, 0);
+		}
+		count.reset();
+		sum.reset();
+		max.reset();
+	}//reset end
+
+	/**
+	 * @return a short summary such as "click n=12 p50=40.1us p99=95.2us
+	 * 		max=120.0us"
+	 */
+	public String toString(){
+		return String.format("%s n=%d p50=%.1fus p99=%.1fus max=%.1fus", name,
+				getCount(), getP50Micros(), getP99Micros(), getMaxMicros());
+	}//toString end
+}//LatencyHistogram end
@@ -0,0 +1,46 @@
+/**
+ * JMX view of a LatencyHistogram. All latencies are in microseconds.
+ * @author Grady Barrett
+ */
+public interface LatencyHistogramMBean {
+
+	/**
+	 * @return the number of values recorded
+	 */
+	long getCount();
+
+	/**
+	 * @return the mean latency
+	 */
+	double getMeanMicros();
+
+	/**
+	 * @return the median latency
+	 */
+	double getP50Micros();
+
+	/**
+	 * @return the 90th percentile latency
+	 */
+	double getP90Micros();
+
+	/**
+	 * @return the 99th percentile latency
+	 */
+	double getP99Micros();
+
+	/**
+	 * @return the 99.9th percentile latency
+	 */
+	double getP999Micros();
+
+	/**
+	 * @return the largest latency recorded
+	 */
+	double getMaxMicros();
+
+	/**
+	 * Forgets everything recorded.
+	 */
+	void reset();
+}//LatencyHistogramMBean end
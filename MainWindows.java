@@ -21,34 +21,78 @@
 import java.awt.Color;
 import java.awt.Graphics;
 import java.awt.Point;
-import java.util.ListIterator;
+import java.awt.Rectangle;
 import java.util.Random;
 
 /**
  * Manages creation of window and box objects within the GUI. 
  * @author Grady Barrett
- * @implements SimpleWindowManager
+ * @implements SimpleWindowManager, DamageTracking, SnapshotSource, DragHandling
  */
-public class MainWindows implements SimpleWindowManager {
+public class MainWindows implements SimpleWindowManager, DamageTracking, 
+		SnapshotSource, DragHandling {
 		
 	final int WIN_WIDTH = 400; // constant window width
 	final int WIN_HEIGHT = 300; // constant window height
-	Color squaresColor;
+	final int GRIP_SIZE = 12; // size of the corner that resizes a window when dragged
+	final int MIN_SIZE = 20; // smallest window width and height
 	
-	//linked list of window objects
-	KWLinkedList<Windows> windows = new KWLinkedList<Windows>(); 
+	Windows dragWindow = null; // window being dragged, or null
+	boolean dragResizes; // true to resize dragWindow, false to move it
+	int pressX; // x coordinate where the drag started
+	int pressY; // y coordinate where the drag started
+	int startX; // x location of dragWindow when the drag started
+	int startY; // y location of dragWindow when the drag started
+	int startWidth; // width of dragWindow when the drag started
+	int startHeight; // height of dragWindow when the drag started
+	
+	//z-ordered stack of window objects, back to front
+	WindowStack windows = new WindowStack(); 
+	
+	// area changed since the last call to takeDamage, or null
+	Rectangle damage = null;
+	
+	// journal recording every change, or null
+	OperationJournal journal = null;
+	
+	int nextWindowId = 0; // id given to the next window added
+	
+	// visibility pass reused by every draw
+	VisibilityPass pass = new VisibilityPass();
+	
+	// last snapshot handed out, given out again while nothing changed
+	SceneSnapshot lastSnapshot = null;
+	
+	// bounds of a window being damaged, reused
+	private Rectangle bounds = new Rectangle();
+	
+	// spatial index used to find the window under a click
+	WindowIndex index = new WindowIndex(SimpleWindowsGUI.CANVAS_WIDTH, 
+			SimpleWindowsGUI.CANVAS_HEIGHT);
 	
 	/**
-	 * Constructor that loads the windows linked list with 
+	 * Constructor that loads the windows stack with 
 	 * 		6 window objects placed at random locations 
 	 * 		within the GUI.
 	 */
 	public MainWindows(){
-		for(int i = 0; i < 6; i++){
-			
-			// for generating random window x,y coordinates and 
-			//		RGB values.
-			Random rand = new Random(); 
+		this(6);
+	}//MainWindows end
+	
+	/**
+	 * Constructor that loads the windows stack with 
+	 * 		count window objects placed at random locations 
+	 * 		within the GUI.
+	 * @param count
+	 * 			number of windows, 0 for an empty scene
+	 */
+	public MainWindows(int count){
+		
+		// for generating random window x,y coordinates and 
+		//		RGB values, one generator for all the windows
+		Random rand = new Random(); 
+		
+		for(int i = 0; i < count; i++){
 			
 			// random RBG values for constructing a random color.
 			int randR = rand.nextInt(255);
@@ -58,52 +102,59 @@ public class MainWindows implements SimpleWindowManager {
 			//new color constructed from random RGB values
 			Color color = new Color(randR, randG, randB);
 			
-			squaresColor = color;
 			int randX = rand.nextInt(400); // random window x coordinate
 			int randY = rand.nextInt(300); // random window y coordinate
 			
 			// new window object
 			Windows w = new Windows(randX, randY, WIN_WIDTH, WIN_HEIGHT, color);
 			
-			windows.add(w); //window object loaded into windows linked list
+			addWindow(w);
 		}//for loop end
 	}//MainWindows end
 	
+	/**
+	 * Puts a new window on top of the scene.
+	 * @param w
+	 * 			window to be added
+	 */
+	public void addWindow(Windows w){
+		w.id = nextWindowId++;
+		windows.addFront(w); //window object loaded on top of the windows stack
+		index.add(w); // window object loaded into the spatial index
+		if(journal != null){
+			journal.appendWindow(w);
+		}
+	}//addWindow end
+	
 	/**
 	 * draw method that calls Windows draw method, determines which window 
 	 * 		is the front window and provides that information to the Windows 
-	 * 		draw method.
+	 * 		draw method. Windows outside the clip of g or hidden behind 
+	 * 		higher windows are skipped.
 	 * @param g
 	 * 			Graphics object for drawing
 	 */
 	public void draw(Graphics g) {
 		
-		// iterator for windows list
-		ListIterator<Windows> iter = windows.listIterator(); 
-		
-		// indicates whether window object should be active window
-		boolean frontWindow = false;  
+		// finds the windows that can be seen, front to back
+		pass.run(windows, pass.clipOf(g));
 		
-		//determines which window object should be the active window then 
-		//		calls draw method
-		while(iter.hasNext()){
-			
-			// windows object to reference iter.next() object reference
-			Windows w = iter.next(); 
-			
-			// if iterator passes last item in the list it is the front window
-			if (!iter.hasNext()){
-				frontWindow = true;
-				w.draw(g, frontWindow, squaresColor); // call to Windows class draw 
-			}else // all other windows are not the front window
-				w.draw(g, frontWindow, squaresColor); // call to Windows class draw
-		}// while loop end
+		//draws every visible window from back to front, the top of the 
+		//		stack is the active window
+		for(int i = 0; i < pass.visible.size(); i++){
+			Windows w = pass.visible.get(i);
+			// call to Windows class draw 
+			w.draw(g, w == windows.top(), w.squareColor, pass.occluders.get(i)); 
+		}// for loop end
+		if(WindowMetrics.ENABLED){
+			WindowMetrics.windowsDrawn.add(pass.visible.size());
+		}
 	}// draw end
 
 	/**
-	 * Handles user clicks. Calls Windows isInside to determine which window 
-	 * 		click falls in and reorders linked list so clicked window is at 
-	 * 		the end of the list( makes it the active window)
+	 * Handles user clicks. Uses the spatial index to find the topmost 
+	 * 		window under the click and raises it to the top of the 
+	 * 		windows stack ( makes it the active window)
 	 * @param x 
 	 * 			x coordinate of click
 	 * @param y 
@@ -111,29 +162,229 @@ public class MainWindows implements SimpleWindowManager {
 	 */
 	public void handleClick(int x, int y) {
 		
-		//iterator inserted at end of linked list
-		ListIterator<Windows> iter = windows.listIterator(6); 
-		
-		while(iter.hasPrevious()){
-			
-			// variable to store iter.previous() returned window
-			Windows windowToMove = iter.previous(); 
-			
-			//checks if click fell inside windowToMove window
-			if(windowToMove.isInside(x,y) == true){
-				//checks to see if click falls within active window.  
-				//		If so calls Windows class handleClick
-				if(iter.nextIndex() == 5){
-					windowToMove.handleClick(x, y);
-				}else{
-					// remove clicked on window from current location in windows 
-					//		linked list
-					iter.remove();  
-					// put clicked on window object at end of windows linked list
-					windows.add(windowToMove); 	
-				}
-				return; // return to exit from while loop.
-			}// if end
-		}// while end
+		if(!WindowMetrics.ENABLED){
+			applyClick(x, y);
+			return;
+		}
+		long start = System.nanoTime();
+		applyClick(x, y);
+		WindowMetrics.managerClick.record(System.nanoTime() - start);
 	}// handleClick end
+	
+	/**
+	 * Finds the window under a click and either passes the click to it, 
+	 * 		if it is the active window, or raises it.
+	 * @param x 
+	 * 			x coordinate of click
+	 * @param y 
+	 * 			y coordinate of click
+	 */
+	void applyClick(int x, int y) {
+		
+		// topmost window under the click
+		long start = WindowMetrics.ENABLED ? System.nanoTime() : 0;
+		Windows windowToMove = index.topmostAt(x, y);
+		if(WindowMetrics.ENABLED){
+			WindowMetrics.hitTest.record(System.nanoTime() - start);
+		}
+		
+		if(windowToMove == null){
+			return; // click did not fall inside any window
+		}
+		
+		//checks to see if click falls within active window.  
+		//		If so calls Windows class handleClick
+		if(windowToMove == windows.top()){
+			int before = windowToMove.squares.size();
+			Rectangle changed = windowToMove.handleClick(x, y);
+			if(journal != null && changed != null){
+				journal.append(windowToMove.squares.size() > before ? 
+						OperationJournal.ADD_SQUARE : OperationJournal.REMOVE_SQUARES,
+						windowToMove.id, x, y);
+			}
+			addDamage(changed);
+		}else{
+			raiseWindow(windowToMove);
+		}
+	}// applyClick end
+	
+	/**
+	 * Starts a drag if the press is on a window. Pressing inside the 
+	 * 		bottom right corner of a window resizes it, pressing anywhere 
+	 * 		else moves it. Nothing changes until the mouse is dragged.
+	 * @param x
+	 * 			x coordinate of the press
+	 * @param y
+	 * 			y coordinate of the press
+	 */
+	public void handlePress(int x, int y) {
+		
+		dragWindow = index.topmostAt(x, y);
+		if(dragWindow == null){
+			return; // press did not fall inside any window
+		}
+		pressX = x;
+		pressY = y;
+		startX = dragWindow.winUpperLeftX;
+		startY = dragWindow.winUpperLeftY;
+		startWidth = dragWindow.winWidth;
+		startHeight = dragWindow.winHeight;
+		dragResizes = x >= startX + startWidth - GRIP_SIZE && 
+				y >= startY + startHeight - GRIP_SIZE;
+	}// handlePress end
+	
+	/**
+	 * Moves or resizes the window being dragged so it follows the mouse, 
+	 * 		raising it first if it is not the active window.
+	 * @param x
+	 * 			x coordinate of the mouse
+	 * @param y
+	 * 			y coordinate of the mouse
+	 */
+	public void handleDrag(int x, int y) {
+		
+		if(dragWindow == null){
+			return; // no drag in progress
+		}
+		if(dragWindow != windows.top()){
+			raiseWindow(dragWindow);
+		}
+		if(dragResizes){
+			resizeWindow(dragWindow, Math.max(MIN_SIZE, startWidth + x - pressX), 
+					Math.max(MIN_SIZE, startHeight + y - pressY));
+		}else{
+			moveWindow(dragWindow, startX + x - pressX, startY + y - pressY);
+		}
+	}// handleDrag end
+	
+	/**
+	 * Ends a drag. A resized window gets a grid for its new size here 
+	 * 		rather than on every step of the drag.
+	 * @param x
+	 * 			x coordinate of the release
+	 * @param y
+	 * 			y coordinate of the release
+	 */
+	public void handleRelease(int x, int y) {
+		
+		if(dragWindow != null && dragResizes){
+			dragWindow.regrid();
+		}
+		dragWindow = null;
+	}// handleRelease end
+	
+	/**
+	 * Raises a window to the top of the stack and damages the windows 
+	 * 		whose border color changes.
+	 * @param w
+	 * 			window to be raised
+	 */
+	void raiseWindow(Windows w) {
+		
+		// the old active window loses its red border and the raised 
+		//		window is uncovered and gets one
+		addDamage(windows.top().getBounds(bounds));
+		addDamage(w.getBounds(bounds));
+		// puts the window on top of its index cells, then relinks it at 
+		//		the top of the stack
+		index.raise(w);
+		windows.raise(w);
+		if(WindowMetrics.ENABLED){
+			WindowMetrics.windowsRaised.increment();
+		}
+		if(journal != null){
+			journal.append(OperationJournal.RAISE, w.id, 0, 0);
+		}
+	}// raiseWindow end
+	
+	/**
+	 * Moves a window and updates only the index cells it left or 
+	 * 		entered. Only the old and new bounds are damaged.
+	 * @param w
+	 * 			window to be moved
+	 * @param x
+	 * 			new x location
+	 * @param y
+	 * 			new y location
+	 */
+	void moveWindow(Windows w, int x, int y) {
+		
+		if(x == w.winUpperLeftX && y == w.winUpperLeftY){
+			return;
+		}
+		addDamage(w.getBounds(bounds));
+		int oldX = w.winUpperLeftX;
+		int oldY = w.winUpperLeftY;
+		w.moveTo(x, y);
+		index.update(w, oldX, oldY, w.winWidth, w.winHeight);
+		addDamage(w.getBounds(bounds));
+		if(journal != null){
+			journal.append(OperationJournal.MOVE, w.id, x, y);
+		}
+	}// moveWindow end
+	
+	/**
+	 * Resizes a window and updates only the index cells it left or 
+	 * 		entered. Only the old and new bounds are damaged.
+	 * @param w
+	 * 			window to be resized
+	 * @param width
+	 * 			new width
+	 * @param height
+	 * 			new height
+	 */
+	void resizeWindow(Windows w, int width, int height) {
+		
+		if(width == w.winWidth && height == w.winHeight){
+			return;
+		}
+		addDamage(w.getBounds(bounds));
+		int oldWidth = w.winWidth;
+		int oldHeight = w.winHeight;
+		w.resizeTo(width, height);
+		index.update(w, w.winUpperLeftX, w.winUpperLeftY, oldWidth, oldHeight);
+		addDamage(w.getBounds(bounds));
+		if(journal != null){
+			journal.append(OperationJournal.RESIZE, w.id, width, height);
+		}
+	}// resizeWindow end
+	
+	/**
+	 * Returns the union of all areas changed by clicks since the last 
+	 * 		call and resets it.
+	 * @return the changed area, or null if nothing changed
+	 */
+	public Rectangle takeDamage() {
+		Rectangle changed = damage;
+		damage = null;
+		return changed;
+	}// takeDamage end
+	
+	/**
+	 * Copies the scene for drawing on another thread. While nothing 
+	 * 		changed the last copy is handed out again.
+	 * @return an immutable copy of the windows and their squares
+	 */
+	public SceneSnapshot snapshot() {
+		if(lastSnapshot == null || !lastSnapshot.matches(windows)){
+			lastSnapshot = new SceneSnapshot(windows);
+		}
+		return lastSnapshot;
+	}// snapshot end
+	
+	/**
+	 * Adds an area to the damage waiting to be repainted.
+	 * @param r
+	 * 			changed area, may be null
+	 */
+	void addDamage(Rectangle r) {
+		if(r == null){
+			return;
+		}
+		if(damage == null){
+			damage = new Rectangle(r);
+		}else{
+			damage.add(r);
+		}
+	}// addDamage end
 }
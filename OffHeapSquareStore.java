@@ -0,0 +1,689 @@
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Keeps the squares of one window outside the Java heap, for scenes with
+ * 		so many squares that the heap arrays of SquareStore would make
+ * 		garbage collection slow. Square i is a fixed 20 byte record: x, y,
+ * 		width, height and ARGB color as ints in native byte order, with x
+ * 		and y relative to the window like SquareStore keeps them. Records
+ * 		are kept in chunks of 4096, and hit-testing and drawing read them
+ * 		straight out of the chunk buffers.
+ *
+ * The chunks are either direct memory or slices of a memory map of a
+ * 		file, so a scene can hold more squares than fit in RAM and let the
+ * 		operating system page them in and out. The file is only working
+ * 		space: it is not a saved scene, use SceneFile for that. Call close
+ * 		when the store is no longer needed to release the memory and the
+ * 		map without waiting for garbage collection.
+ *
+ * copy shares the chunks instead of copying them. Each copy starts a new
+ * 		epoch, and a chunk from an earlier epoch is copied the first time
+ * 		this store writes a record a copy can see, so taking a snapshot
+ * 		costs one array of chunk references and each later click copies
+ * 		at most the couple of chunks it writes. Chunks copied from a file
+ * 		map are kept in direct memory.
+ * @author Grady Barrett
+ */
+public class OffHeapSquareStore implements SquareStorage {
+
+	static final int RECORD_BYTES = 20; // bytes per square
+	static final int X = 0; // offset of the x location in a record
+	static final int Y = 4; // offset of the y location in a record
+	static final int W = 8; // offset of the width in a record
+	static final int H = 12; // offset of the height in a record
+	static final int ARGB = 16; // offset of the color in a record
+	static final int CHUNK_SHIFT = 12; // log2 of the squares in a chunk
+	static final int CHUNK_SQUARES = 1 << CHUNK_SHIFT; // squares in a full chunk
+	static final int CHUNK_MASK = CHUNK_SQUARES - 1; // index of a square in its chunk
+	static final int REGION_CHUNKS = 64; // chunks mapped from a file at a time
+	static final int MAX_SQUARES = Integer.MAX_VALUE; // most squares a store holds
+
+	ByteBuffer[] chunks = new ByteBuffer[4]; // record chunks, only read and written by absolute index
+	int[] chunkEpochs = new int[4]; // epoch each chunk was made in
+	int chunkCount = 0; // number of chunks in use
+	int epoch = 0; // bumped by every copy, chunks from older epochs are shared
+	int sharedHigh = 0; // most squares any copy holds, records past it are never shared
+	int size = 0; // number of squares in the store
+	int windowX = 0; // canvas x location the squares are relative to
+	int windowY = 0; // canvas y location the squares are relative to
+	File file; // file the records are mapped from, or null for direct memory
+	MappedByteBuffer[] regions = new MappedByteBuffer[1]; // maps of the file, REGION_CHUNKS chunks each
+	int[] regionEpochs = new int[1]; // epoch each map was made in
+	boolean closed = false; // true once close has been called
+	Color lastColor = null; // Color made for the most recently drawn square
+
+	/**
+	 * Constructor for a store in direct memory.
+	 * @param capacity
+	 * 			number of squares the store holds before it grows
+	 */
+	public OffHeapSquareStore(int capacity){
+		chunks[0] = allocate(Math.min(Math.max(capacity, 8), CHUNK_SQUARES));
+		chunkCount = 1;
+	}//OffHeapSquareStore end
+
+	/**
+	 * Constructor for a store memory-mapped from a file. Anything already
+	 * 		in the file is overwritten. The file is mapped REGION_CHUNKS
+	 * 		chunks at a time.
+	 * @param newFile
+	 * 			file holding the records, created if it does not exist
+	 * @param capacity
+	 * 			number of squares the store holds before it grows, only a
+	 * 				hint, since whole regions are mapped
+	 * @throws IOException
+	 * 			if the file cannot be mapped
+	 */
+	public OffHeapSquareStore(File newFile, int capacity) throws IOException {
+		file = newFile;
+		regions[0] = map(file, 0);
+		regionEpochs[0] = epoch;
+		addChunk();
+	}//OffHeapSquareStore end
+
+	/**
+	 * Constructor for a store sharing the chunks of another, used by copy
+	 * 		and movedTo. No chunk belongs to the new store, so it copies any
+	 * 		chunk before writing to it.
+	 * @param newChunks
+	 * 			chunks holding the records
+	 * @param newCount
+	 * 			number of chunks in use
+	 * @param newSize
+	 * 			number of squares in the chunks
+	 * @param newWindowX
+	 * 			canvas x location the squares are relative to
+	 * @param newWindowY
+	 * 			canvas y location the squares are relative to
+	 */
+	private OffHeapSquareStore(ByteBuffer[] newChunks, int newCount, int newSize,
+			int newWindowX, int newWindowY){
+		chunks = newChunks;
+		chunkEpochs = new int[newChunks.length];
+		Arrays.fill(chunkEpochs, -1);
+		chunkCount = newCount;
+		sharedHigh = MAX_SQUARES; // every record may be seen by the source
+		size = newSize;
+		windowX = newWindowX;
+		windowY = newWindowY;
+	}//OffHeapSquareStore end
+
+	/**
+	 * @param capacity
+	 * 			number of squares
+	 * @return a direct buffer for capacity records
+	 */
+	static ByteBuffer allocate(int capacity){
+		return ByteBuffer.allocateDirect(capacity * RECORD_BYTES).order(ByteOrder.nativeOrder());
+	}//allocate end
+
+	/**
+	 * Maps one region of a file, making the file longer if needed.
+	 * @param mapped
+	 * 			file holding the records
+	 * @param region
+	 * 			number of the region, counted from the start of the file
+	 * @return a read/write map of REGION_CHUNKS full chunks
+	 * @throws IOException
+	 * 			if the file cannot be mapped
+	 */
+	static MappedByteBuffer map(File mapped, int region) throws IOException {
+
+		long regionBytes = (long) REGION_CHUNKS * CHUNK_SQUARES * RECORD_BYTES;
+		RandomAccessFile raf = new RandomAccessFile(mapped, "rw");
+		try{
+			return raf.getChannel().map(FileChannel.MapMode.READ_WRITE,
+					region * regionBytes, regionBytes);
+		}finally{
+			raf.close(); // the map stays valid after the channel is closed
+		}
+	}//map end
+
+	/**
+	 * Adds a full chunk after the last one, from direct memory or from the 
+	 * 		next slice of the file, mapping another region when one runs 
+	 * 		out.
+	 */
+	void addChunk(){
+
+		if(chunkCount == chunks.length){
+			chunks = Arrays.copyOf(chunks, Math.max(4, chunkCount * 2));
+			chunkEpochs = Arrays.copyOf(chunkEpochs, chunks.length);
+		}
+		if(file == null){
+			chunks[chunkCount] = allocate(CHUNK_SQUARES);
+		}else{
+			int region = chunkCount / REGION_CHUNKS;
+			if(region == regions.length){
+				regions = Arrays.copyOf(regions, region * 2);
+				regionEpochs = Arrays.copyOf(regionEpochs, region * 2);
+			}
+			if(regions[region] == null){
+				try{
+					regions[region] = map(file, region);
+				}catch(IOException e){
+					throw new IllegalStateException("cannot grow " + file, e);
+				}
+				regionEpochs[region] = epoch;
+			}
+			int chunkBytes = CHUNK_SQUARES * RECORD_BYTES;
+			chunks[chunkCount] = regions[region].slice(
+					(chunkCount % REGION_CHUNKS) * chunkBytes, chunkBytes)
+					.order(ByteOrder.nativeOrder());
+		}
+		chunkEpochs[chunkCount++] = epoch;
+	}//addChunk end
+
+	/**
+	 * Returns the chunk holding a record that is about to be written, 
+	 * 		first giving this store its own copy of the chunk if a copy of 
+	 * 		the store may still read the record.
+	 * @param i
+	 * 			index of the square being written
+	 * @return the chunk to write square i into
+	 */
+	ByteBuffer writable(int i){
+
+		int c = i >>> CHUNK_SHIFT;
+		if(chunkEpochs[c] != epoch && i < sharedHigh){
+			ByteBuffer own = allocate(chunks[c].capacity() / RECORD_BYTES);
+			ByteBuffer shared = chunks[c].duplicate();
+			shared.clear();
+			own.put(shared);
+			chunks[c] = own;
+			chunkEpochs[c] = epoch;
+		}
+		return chunks[c];
+	}//writable end
+
+	/**
+	 * Appends a square to the store.
+	 * @param newX
+	 * 			canvas x location of the square
+	 * @param newY
+	 * 			canvas y location of the square
+	 * @param newWidth
+	 * 			width of the square
+	 * @param newHeight
+	 * 			height of the square
+	 * @param newArgb
+	 * 			packed ARGB color of the square
+	 * @return the index of the new square
+	 * @throws IllegalStateException
+	 * 			if the store is full or closed
+	 */
+	public int add(int newX, int newY, int newWidth, int newHeight, int newArgb){
+
+		if(closed){
+			throw new IllegalStateException("square store is closed");
+		}
+		if(size == MAX_SQUARES){
+			throw new IllegalStateException("square store is full");
+		}
+		int c = size >>> CHUNK_SHIFT;
+		if(c == chunkCount){
+			addChunk();
+		}else if(((size & CHUNK_MASK) + 1) * RECORD_BYTES > chunks[c].capacity()){
+			// only the first chunk of a direct store starts small, it 
+			//		doubles until it is full size
+			ByteBuffer bigger = allocate(Math.min(size * 2, CHUNK_SQUARES));
+			ByteBuffer used = chunks[c].duplicate();
+			used.clear();
+			bigger.put(used);
+			chunks[c] = bigger;
+			chunkEpochs[c] = epoch;
+		}
+		ByteBuffer records = writable(size);
+		int base = (size & CHUNK_MASK) * RECORD_BYTES;
+		records.putInt(base + X, newX - windowX);
+		records.putInt(base + Y, newY - windowY);
+		records.putInt(base + W, newWidth);
+		records.putInt(base + H, newHeight);
+		records.putInt(base + ARGB, newArgb);
+		return size++;
+	}//add end
+
+	/**
+	 * Removes a square by moving the last square into its place.
+	 * @param i
+	 * 			index of the square to be removed
+	 * @return the old index of the square that now sits at i, or -1 if
+	 * 		the removed square was the last one
+	 */
+	public int remove(int i){
+
+		int last = --size;
+		if(i == last){
+			return -1;
+		}
+		ByteBuffer from = chunks[last >>> CHUNK_SHIFT];
+		ByteBuffer to = writable(i);
+		int fromBase = (last & CHUNK_MASK) * RECORD_BYTES;
+		int toBase = (i & CHUNK_MASK) * RECORD_BYTES;
+		for(int off = 0; off < RECORD_BYTES; off += 4){
+			to.putInt(toBase + off, from.getInt(fromBase + off));
+		}
+		return last;
+	}//remove end
+
+	/**
+	 * @param i
+	 * 			index of a square
+	 * @param px
+	 * 			x coordinate of user click
+	 * @param py
+	 * 			y coordinate of user click
+	 * @return true if the user click is within square i, using the same
+	 * 		bounds as SquareStore.isInside
+	 */
+	public boolean isInside(int i, int px, int py){
+		ByteBuffer records = chunks[i >>> CHUNK_SHIFT];
+		int base = (i & CHUNK_MASK) * RECORD_BYTES;
+		int sx = records.getInt(base + X);
+		int sy = records.getInt(base + Y);
+		px -= windowX;
+		py -= windowY;
+		return px >= sx - 10 && px <= sx + records.getInt(base + W) / 2 &&
+				py >= sy - 10 && py <= sy + records.getInt(base + H) / 2;
+	}//isInside end
+
+	/**
+	 * @param i
+	 * 			index of a square
+	 * @return the area painted by square i
+	 */
+	public Rectangle getBounds(int i){
+		ByteBuffer records = chunks[i >>> CHUNK_SHIFT];
+		int base = (i & CHUNK_MASK) * RECORD_BYTES;
+		return new Rectangle(records.getInt(base + X) - 10 + windowX,
+				records.getInt(base + Y) - 10 + windowY,
+				records.getInt(base + W), records.getInt(base + H));
+	}//getBounds end
+
+	/**
+	 * Draws every square in the store that falls inside the clip of g.
+	 * @param g
+	 * 			Graphics object for drawing
+	 */
+	public void draw(Graphics g){
+		draw(g, null);
+	}//draw end
+
+	/**
+	 * Draws every square in the store that falls inside the clip of g and
+	 * 		is not completely covered by one of the occluders.
+	 * @param g
+	 * 			Graphics object for drawing
+	 * @param occluders
+	 * 			opaque rectangles drawn over the squares later, may be null
+	 */
+	public void draw(Graphics g, ArrayList<Rectangle> occluders){
+
+		Rectangle clip = SquareStore.clipOf(g); // area being repainted
+		int drawn = 0; // squares drawn
+		for(int c = 0; c < chunkCount && c << CHUNK_SHIFT < size; c++){
+			ByteBuffer records = chunks[c];
+			int end = Math.min(size - (c << CHUNK_SHIFT), CHUNK_SQUARES) * RECORD_BYTES;
+			for(int base = 0; base < end; base += RECORD_BYTES){
+				int left = records.getInt(base + X) - 10 + windowX;
+				int top = records.getInt(base + Y) - 10 + windowY;
+				int width = records.getInt(base + W);
+				int height = records.getInt(base + H);
+				if(clip != null && (left >= clip.x + clip.width || top >= clip.y + clip.height
+						|| left + width <= clip.x || top + height <= clip.y)){
+					continue; // square is outside the repainted area
+				}
+				if(occluders != null && SquareStore.isHidden(left, top, width, height, occluders)){
+					continue; // square is under a higher window
+				}
+				draw(g, records, base);
+				drawn++;
+			}
+		}//for loop end
+		if(WindowMetrics.ENABLED){
+			WindowMetrics.squaresDrawn.add(drawn);
+		}
+	}//draw end
+
+	/**
+	 * Draws one square.
+	 * @param g
+	 * 			Graphics object for drawing
+	 * @param i
+	 * 			index of the square
+	 */
+	public void draw(Graphics g, int i){
+		draw(g, chunks[i >>> CHUNK_SHIFT], (i & CHUNK_MASK) * RECORD_BYTES);
+	}//draw end
+
+	/**
+	 * Draws the square held by a record. A Color is only created when the 
+	 * 		color changes from one drawn square to the next.
+	 * @param g
+	 * 			Graphics object for drawing
+	 * @param records
+	 * 			chunk holding the record
+	 * @param base
+	 * 			byte offset of the record in the chunk
+	 */
+	private void draw(Graphics g, ByteBuffer records, int base){
+
+		g.setColor(colorOf(records.getInt(base + ARGB)));
+		g.fillRect(records.getInt(base + X) - 10 + windowX,
+				records.getInt(base + Y) - 10 + windowY,
+				records.getInt(base + W), records.getInt(base + H));
+	}//draw end
+
+	/**
+	 * @param argb
+	 * 			packed ARGB color of a square
+	 * @return a Color for it, the one made for the last square drawn if 
+	 * 		it was the same color
+	 */
+	private Color colorOf(int argb){
+
+		// read once, so threads drawing the same store at the same time
+		//		each use a Color that matches the square
+		Color c = lastColor;
+		if(c == null || c.getRGB() != argb){
+			c = new Color(argb, true);
+			lastColor = c;
+		}
+		return c;
+	}//colorOf end
+
+	/**
+	 * Fills every square that falls inside an area and is not completely
+	 * 		covered by one of the occluders straight into the pixels of an
+	 * 		opaque image, in the same order and with the same result as
+	 * 		draw.
+	 * @param g
+	 * 			Graphics object drawing into the same image
+	 * @param pixels
+	 * 			pixels of a TYPE_INT_RGB image, one int per pixel
+	 * @param scanWidth
+	 * 			width of the image
+	 * @param originX
+	 * 			canvas x location of the left column of the image
+	 * @param originY
+	 * 			canvas y location of the top row of the image
+	 * @param area
+	 * 			canvas area being drawn, or null for the whole image
+	 * @param occluders
+	 * 			opaque rectangles drawn over the squares later, may be null
+	 */
+	public void fill(Graphics g, int[] pixels, int scanWidth, int originX,
+			int originY, Rectangle area, ArrayList<Rectangle> occluders){
+
+		Rectangle clip = SquareStore.clipToImage(pixels, scanWidth, originX, originY, area);
+		int drawn = 0; // squares drawn
+		for(int c = 0; c < chunkCount && c << CHUNK_SHIFT < size; c++){
+			ByteBuffer records = chunks[c];
+			int end = Math.min(size - (c << CHUNK_SHIFT), CHUNK_SQUARES) * RECORD_BYTES;
+			for(int base = 0; base < end; base += RECORD_BYTES){
+				int left = records.getInt(base + X) - 10 + windowX;
+				int top = records.getInt(base + Y) - 10 + windowY;
+				int width = records.getInt(base + W);
+				int height = records.getInt(base + H);
+				if(left >= clip.x + clip.width || top >= clip.y + clip.height
+						|| left + width <= clip.x || top + height <= clip.y){
+					continue; // square is outside the area
+				}
+				if(occluders != null && SquareStore.isHidden(left, top, width, height, occluders)){
+					continue; // square is under a higher window
+				}
+				fill(g, pixels, scanWidth, originX, originY, clip, records, base);
+				drawn++;
+			}
+		}//for loop end
+		if(WindowMetrics.ENABLED){
+			WindowMetrics.squaresDrawn.add(drawn);
+		}
+	}//fill end
+
+	/**
+	 * Fills one square straight into the pixels of an opaque image.
+	 * @param g
+	 * 			Graphics object drawing into the same image, used for
+	 * 				translucent squares
+	 * @param pixels
+	 * 			pixels of a TYPE_INT_RGB image, one int per pixel
+	 * @param scanWidth
+	 * 			width of the image
+	 * @param originX
+	 * 			canvas x location of the left column of the image
+	 * @param originY
+	 * 			canvas y location of the top row of the image
+	 * @param clip
+	 * 			canvas area that may be written, inside the image
+	 * @param i
+	 * 			index of the square
+	 */
+	public void fill(Graphics g, int[] pixels, int scanWidth, int originX,
+			int originY, Rectangle clip, int i){
+		fill(g, pixels, scanWidth, originX, originY, clip,
+				chunks[i >>> CHUNK_SHIFT], (i & CHUNK_MASK) * RECORD_BYTES);
+	}//fill end
+
+	/**
+	 * Fills the square held by a record straight into the pixels of an 
+	 * 		opaque image.
+	 * @param g
+	 * 			Graphics object drawing into the same image
+	 * @param pixels
+	 * 			pixels of a TYPE_INT_RGB image, one int per pixel
+	 * @param scanWidth
+	 * 			width of the image
+	 * @param originX
+	 * 			canvas x location of the left column of the image
+	 * @param originY
+	 * 			canvas y location of the top row of the image
+	 * @param clip
+	 * 			canvas area that may be written, inside the image
+	 * @param records
+	 * 			chunk holding the record
+	 * @param base
+	 * 			byte offset of the record in the chunk
+	 */
+	private void fill(Graphics g, int[] pixels, int scanWidth, int originX,
+			int originY, Rectangle clip, ByteBuffer records, int base){
+
+		int color = records.getInt(base + ARGB);
+		int sx = records.getInt(base + X) - 10 + windowX;
+		int sy = records.getInt(base + Y) - 10 + windowY;
+		int left = Math.max(sx, clip.x);
+		int right = Math.min(sx + records.getInt(base + W), clip.x + clip.width);
+		int top = Math.max(sy, clip.y);
+		int bottom = Math.min(sy + records.getInt(base + H), clip.y + clip.height);
+		if(left >= right || top >= bottom){
+			return;
+		}
+		if((color >>> 24) != 0xFF){
+			// needs blending, so goes through g, clipped here so g needs 
+			//		no clip of its own
+			g.setColor(colorOf(color));
+			g.fillRect(left, top, right - left, bottom - top);
+			return;
+		}
+		for(int row = top; row < bottom; row++){
+			int start = (row - originY) * scanWidth + left - originX;
+			Arrays.fill(pixels, start, start + right - left, color);
+		}//for loop end
+	}//fill end
+
+	/**
+	 * @param width
+	 * 			width of the window
+	 * @param height
+	 * 			height of the window
+	 * @return true if every square lies inside a window of the given
+	 * 		size, so drawing them needs no clipping
+	 */
+	public boolean fitsIn(int width, int height){
+
+		for(int c = 0; c < chunkCount && c << CHUNK_SHIFT < size; c++){
+			ByteBuffer records = chunks[c];
+			int end = Math.min(size - (c << CHUNK_SHIFT), CHUNK_SQUARES) * RECORD_BYTES;
+			for(int base = 0; base < end; base += RECORD_BYTES){
+				int left = records.getInt(base + X) - 10;
+				int top = records.getInt(base + Y) - 10;
+				if(left < 0 || top < 0 || left + records.getInt(base + W) > width
+						|| top + records.getInt(base + H) > height){
+					return false;
+				}
+			}
+		}//for loop end
+		return true;
+	}//fitsIn end
+
+	/**
+	 * @return a new store sharing the chunks of this one, copy-on-write
+	 */
+	public OffHeapSquareStore copy(){
+		return share(windowX, windowY);
+	}//copy end
+
+	/**
+	 * Makes a store for a copy of a window that was moved. Like copy, the 
+	 * 		chunks are shared until either store writes to them.
+	 * @param newWindowX
+	 * 			canvas x location of the moved window
+	 * @param newWindowY
+	 * 			canvas y location of the moved window
+	 * @return a store holding the same squares relative to the new location
+	 */
+	public OffHeapSquareStore movedTo(int newWindowX, int newWindowY){
+		return share(newWindowX, newWindowY);
+	}//movedTo end
+
+	/**
+	 * Hands the chunks to a new store and starts a new epoch, so every 
+	 * 		chunk held now is copied before this store next writes a record 
+	 * 		the new store can see.
+	 * @param newWindowX
+	 * 			canvas x location of the new store
+	 * @param newWindowY
+	 * 			canvas y location of the new store
+	 * @return the new store
+	 */
+	private OffHeapSquareStore share(int newWindowX, int newWindowY){
+
+		epoch++;
+		sharedHigh = Math.max(sharedHigh, size);
+		return new OffHeapSquareStore(Arrays.copyOf(chunks, chunkCount), chunkCount,
+				size, newWindowX, newWindowY);
+	}//share end
+
+	/**
+	 * Releases the store. The file map is written back to the file, and 
+	 * 		every chunk and map no copy of the store can reach is freed at 
+	 * 		once; the rest are freed by garbage collection once the copies 
+	 * 		are gone. The store is empty afterwards and cannot be added to.
+	 */
+	public void close(){
+
+		if(closed){
+			return;
+		}
+		closed = true;
+		for(int c = 0; c < chunkCount; c++){
+			if(chunkEpochs[c] == epoch){ // a slice of a map is freed with its map
+				free(chunks[c]);
+			}
+		}//for loop end
+		for(int r = 0; r < regions.length && regions[r] != null; r++){
+			regions[r].force();
+			if(regionEpochs[r] == epoch){
+				free(regions[r]);
+			}
+		}//for loop end
+		chunks = new ByteBuffer[0];
+		chunkCount = 0;
+		regions = new MappedByteBuffer[0];
+		size = 0;
+	}//close end
+
+	/**
+	 * Frees the memory or map of a buffer straight away instead of when it
+	 * 		is garbage collected. Only a buffer made by allocateDirect or
+	 * 		map can be freed, slices are skipped, and where the JDK does
+	 * 		not allow it the buffer is left to the collector.
+	 * @param buffer
+	 * 			buffer nothing will read or write again
+	 */
+	static void free(ByteBuffer buffer){
+
+		try{
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+			theUnsafe.setAccessible(true);
+			unsafeClass.getMethod("invokeCleaner", ByteBuffer.class)
+					.invoke(theUnsafe.get(null), buffer);
+		}catch(ReflectiveOperationException e){
+			// a slice, or no way to free it early
+		}catch(RuntimeException e){
+			// not allowed here
+		}
+	}//free end
+
+	/**
+	 * Moves every square along with its window.
+	 * @param newWindowX
+	 * 			new canvas x location of the window
+	 * @param newWindowY
+	 * 			new canvas y location of the window
+	 */
+	public void moveTo(int newWindowX, int newWindowY){
+		windowX = newWindowX;
+		windowY = newWindowY;
+	}//moveTo end
+
+	/**
+	 * @return the number of squares in the store
+	 */
+	public int size(){
+		return size;
+	}
+
+	// single values, for code that works with any SquareStorage
+
+	public int getX(int i){
+		return chunks[i >>> CHUNK_SHIFT].getInt((i & CHUNK_MASK) * RECORD_BYTES + X);
+	}
+
+	public int getY(int i){
+		return chunks[i >>> CHUNK_SHIFT].getInt((i & CHUNK_MASK) * RECORD_BYTES + Y);
+	}
+
+	public int getWidth(int i){
+		return chunks[i >>> CHUNK_SHIFT].getInt((i & CHUNK_MASK) * RECORD_BYTES + W);
+	}
+
+	public int getHeight(int i){
+		return chunks[i >>> CHUNK_SHIFT].getInt((i & CHUNK_MASK) * RECORD_BYTES + H);
+	}
+
+	public int getArgb(int i){
+		return chunks[i >>> CHUNK_SHIFT].getInt((i & CHUNK_MASK) * RECORD_BYTES + ARGB);
+	}
+
+	public int getWindowX(){
+		return windowX;
+	}
+
+	public int getWindowY(){
+		return windowY;
+	}
+}//OffHeapSquareStore end
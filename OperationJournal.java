@@ -0,0 +1,584 @@
+import java.awt.Color;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Append-only log of every change made to a scene by clicks, with
+ * 		periodic checkpoints, so the scene can be rebuilt after a crash.
+ *
+ * A journal directory holds checkpoint-N.wms, a SceneFile of the whole
+ * 		scene, and journal-N.log, the changes made after that checkpoint.
+ * 		A log starts with the int "WMJ2", the number of windows in the
+ * 		checkpoint and the id of each of them, bottom first, which is the
+ * 		order SceneFile loads them in. 13 byte records follow: the
+ * 		operation, the id of the window, and two ints, all big endian.
+ * 		The ints are the click for square changes, the new location for
+ * 		a move and the new size for a resize. A record adding a window 
+ * 		holds its location and is followed by its width, height and 
+ * 		ARGB square color, 25 bytes in all. Logs starting with "WMJ2" 
+ * 		are the same without add records, and logs starting with "WMJ1"
+ * 		also have no id list; their ids are the places of the windows in
+ * 		the checkpoint.
+ *
+ * append never does I/O. Records are copied into a memory buffer under
+ * 		a short lock, and a writer thread wakes every few milliseconds,
+ * 		swaps the buffer out, writes it and forces the log once for the
+ * 		whole batch. A checkpoint takes a SceneSnapshot on the calling
+ * 		thread, which only copies references since the squares are
+ * 		shared copy-on-write, and the writer saves it to a temporary file,
+ * 		forces it and renames it into place, then starts the next log and
+ * 		deletes the older files, so the directory never grows past one
+ * 		checkpoint and its log.
+ *
+ * If the writer fails, the next append or checkpoint detaches the 
+ * 		journal from the scene and throws, so the thread changing the 
+ * 		scene finds out the changes are no longer being made durable 
+ * 		instead of having them dropped without a word.
+ * @author Grady Barrett
+ */
+public class OperationJournal {
+
+	static final int MAGIC = 0x574D4A33; // "WMJ3", start of a log
+	static final int MAGIC_V2 = 0x574D4A32; // "WMJ2", start of a log without add records
+	static final int MAGIC_V1 = 0x574D4A31; // "WMJ1", start of a log without ids
+	static final int RECORD_BYTES = 13; // operation, id, x and y
+	static final int WINDOW_BYTES = 12; // width, height and color after an ADD_WINDOW record
+
+	static final byte ADD_SQUARE = 1; // a click added a square to window id
+	static final byte REMOVE_SQUARES = 2; // a click removed squares from window id
+	static final byte RAISE = 3; // a click or drag raised window id to the top
+	static final byte MOVE = 4; // window id was dragged to x, y
+	static final byte RESIZE = 5; // window id was resized to width x, height y
+	static final byte ADD_WINDOW = 6; // window id was added at x, y with no squares
+
+	File dir; // directory holding the checkpoints and logs
+	MainWindows scene; // scene being journaled
+	int commitMillis = 5; // time between group commits
+	int checkpointEvery = 100000; // records between automatic checkpoints
+	int sinceCheckpoint = 0; // records appended since the last checkpoint
+	int generation; // number of the newest checkpoint asked for
+
+	// records not yet handed to the writer, guarded by this
+	ByteBuffer buffer = ByteBuffer.allocate(RECORD_BYTES * 1024);
+
+	// emptied buffers and checkpoints waiting for the writer, in order,
+	//		guarded by this
+	List<Object> pending = new ArrayList<Object>();
+
+	ByteBuffer spare = null; // buffer the writer has finished with, guarded by this
+	long appended = 0; // records and checkpoints asked for, guarded by this
+	volatile long durable = 0; // how many of those the writer has forced
+
+	Thread writer; // thread doing all file I/O
+	volatile boolean closed = false; // set to stop the writer
+	volatile IOException failure = null; // first error hit by the writer
+	FileChannel log; // log being written, only touched by the writer
+	int logGeneration; // generation of log, only touched by the writer
+	int[] logIds; // ids of the windows in its checkpoint, only touched by the writer
+
+	/**
+	 * Starts journaling a scene: writes a first checkpoint of the scene
+	 * 		as it is now and starts the writer thread. Every click from
+	 * 		then on is logged.
+	 * @param newScene
+	 * 			scene to be journaled
+	 * @param newDir
+	 * 			directory for the journal files, created if missing
+	 * @throws IOException
+	 * 			if the directory or first checkpoint cannot be written
+	 */
+	public OperationJournal(MainWindows newScene, File newDir) throws IOException {
+
+		scene = newScene;
+		dir = newDir;
+		if(!dir.isDirectory() && !dir.mkdirs()){
+			throw new IOException("cannot create " + dir);
+		}
+
+		// carries on numbering after any files already there
+		generation = Math.max(newestGeneration(dir), 0);
+		logGeneration = generation;
+		writeCheckpoint(++generation, scene.snapshot());
+		scene.journal = this;
+
+		writer = new Thread(new Runnable(){
+			public void run(){
+				writeLoop();
+			}
+		}, "window-journal");
+		writer.setDaemon(true);
+		writer.start();
+	}//OperationJournal end
+
+	/**
+	 * Logs one change. Called on the thread changing the scene, and only
+	 * 		copies the record into memory.
+	 * @param op
+	 * 			ADD_SQUARE, REMOVE_SQUARES, RAISE, MOVE or RESIZE
+	 * @param id
+	 * 			id of the window changed
+	 * @param x
+	 * 			x coordinate of the click, new x location or new width
+	 * @param y
+	 * 			y coordinate of the click, new y location or new height
+	 */
+	public void append(byte op, int id, int x, int y){
+
+		checkFailure();
+		synchronized(this){
+			reserve(RECORD_BYTES);
+			buffer.put(op).putInt(id).putInt(x).putInt(y);
+			appended++;
+		}
+		if(++sinceCheckpoint >= checkpointEvery){
+			checkpoint();
+		}
+	}//append end
+
+	/**
+	 * Logs a window that was just added to the scene. A window that 
+	 * 		already holds squares cannot be described by one record, so 
+	 * 		a checkpoint is asked for instead.
+	 * @param w
+	 * 			window added, with its id set
+	 */
+	public void appendWindow(Windows w){
+
+		if(w.squares.size() > 0){
+			checkpoint();
+			return;
+		}
+		checkFailure();
+		synchronized(this){
+			reserve(RECORD_BYTES + WINDOW_BYTES);
+			buffer.put(ADD_WINDOW).putInt(w.id).putInt(w.winUpperLeftX)
+					.putInt(w.winUpperLeftY).putInt(w.winWidth)
+					.putInt(w.winHeight).putInt(w.squareColor.getRGB());
+			appended++;
+		}
+		if(++sinceCheckpoint >= checkpointEvery){
+			checkpoint();
+		}
+	}//appendWindow end
+
+	/**
+	 * Makes room in the buffer for one record. Called while holding this.
+	 * @param bytes
+	 * 			size of the record
+	 */
+	void reserve(int bytes){
+
+		if(buffer.remaining() < bytes){
+			// the writer is behind, hands this buffer over and keeps going
+			pending.add(buffer);
+			buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+		}
+	}//reserve end
+
+	/**
+	 * Detaches the journal from the scene and throws if the writer has 
+	 * 		failed, since nothing appended after that would be saved.
+	 * @throws UncheckedIOException
+	 * 			with the error the writer hit
+	 */
+	void checkFailure(){
+
+		IOException e = failure;
+		if(e != null){
+			if(scene.journal == this){
+				scene.journal = null;
+			}
+			throw new UncheckedIOException("journal stopped writing", e);
+		}
+	}//checkFailure end
+
+	/**
+	 * Asks for a checkpoint of the scene as it is now. The snapshot is
+	 * 		taken on the calling thread, which must be the thread changing
+	 * 		the scene, and costs a reference per window; the writer thread
+	 * 		saves it.
+	 * @throws UncheckedIOException
+	 * 			if the writer has failed
+	 */
+	public void checkpoint(){
+
+		checkFailure();
+		SceneSnapshot copy = scene.snapshot();
+		synchronized(this){
+			handOver();
+			pending.add(copy);
+			generation++;
+			appended++;
+		}
+		sinceCheckpoint = 0;
+		LockSupport.unpark(writer);
+	}//checkpoint end
+
+	/**
+	 * Waits until everything appended so far is forced to disk. The 
+	 * 		writer is woken at once rather than at its next commit, and 
+	 * 		the caller sleeps until the writer signals the batch is forced.
+	 * @throws IOException
+	 * 			if the writer failed or the wait was interrupted
+	 */
+	public void sync() throws IOException {
+
+		synchronized(this){
+			long target = appended;
+			while(durable < target && failure == null && writer.isAlive()){
+				LockSupport.unpark(writer);
+				try{
+					wait(); // releases the lock, so the writer can take the batch
+				}catch(InterruptedException e){
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("interrupted waiting for the journal");
+				}
+			}//while end
+		}
+		if(failure != null){
+			throw failure;
+		}
+	}//sync end
+
+	/**
+	 * Forces everything appended so far, stops the writer and detaches
+	 * 		the journal from the scene.
+	 * @throws IOException
+	 * 			if the writer failed
+	 */
+	public void close() throws IOException {
+
+		if(scene.journal == this){
+			scene.journal = null;
+		}
+		closed = true;
+		LockSupport.unpark(writer);
+		try{
+			writer.join();
+		}catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+		}
+		if(failure != null){
+			throw failure;
+		}
+	}//close end
+
+	/**
+	 * Moves the records in the buffer to the pending list. Called while
+	 * 		holding this.
+	 */
+	void handOver(){
+
+		if(buffer.position() > 0){
+			pending.add(buffer);
+			buffer = spare != null ? spare : ByteBuffer.allocate(buffer.capacity());
+			spare = null;
+		}
+	}//handOver end
+
+	/**
+	 * Body of the writer thread: every commitMillis takes everything
+	 * 		pending and writes it out in order, forcing the log once per
+	 * 		batch.
+	 */
+	void writeLoop(){
+
+		List<Object> batch = new ArrayList<Object>();
+		try{
+			while(true){
+				boolean last = closed;
+				long target;
+				synchronized(this){
+					target = appended;
+					handOver();
+					List<Object> swap = pending;
+					pending = batch;
+					batch = swap;
+				}
+				try{
+					if(failure == null){
+						write(batch);
+						durable = target;
+					}
+				}catch(IOException e){
+					failure = e;
+				}
+				synchronized(this){
+					notifyAll(); // wakes sync
+				}
+				batch.clear();
+				if(last){
+					break;
+				}
+				LockSupport.parkNanos(this, commitMillis * 1000000L);
+			}//while end
+			if(log != null){
+				log.close();
+			}
+		}catch(IOException e){
+			if(failure == null){
+				failure = e;
+			}
+		}finally{
+			synchronized(this){
+				notifyAll(); // sync stops waiting for a writer that is gone
+			}
+		}
+	}//writeLoop end
+
+	/**
+	 * Writes a batch of record buffers and checkpoints in order.
+	 * @param batch
+	 * 			ByteBuffers of records and SceneSnapshots to checkpoint
+	 * @throws IOException
+	 * 			if a file cannot be written
+	 */
+	void write(List<Object> batch) throws IOException {
+
+		boolean dirty = false; // log written since it was last forced
+		for(Object item : batch){
+			if(item instanceof ByteBuffer){
+				ByteBuffer records = (ByteBuffer) item;
+				records.flip();
+				SceneFile.writeFully(openLog(), records);
+				dirty = true;
+				records.clear();
+				synchronized(this){
+					spare = records;
+				}
+			}else{
+				// records before the checkpoint are durable before the
+				//		newer files replace them
+				if(dirty){
+					log.force(false);
+					dirty = false;
+				}
+				writeCheckpoint(logGeneration + 1, (SceneSnapshot) item);
+			}
+		}//for loop end
+		if(dirty){
+			log.force(false);
+		}
+	}//write end
+
+	/**
+	 * @return the log for the newest checkpoint, opened if needed
+	 * @throws IOException
+	 * 			if the log cannot be created
+	 */
+	FileChannel openLog() throws IOException {
+
+		if(log == null){
+			log = new RandomAccessFile(logFile(dir, logGeneration), "rw").getChannel();
+			log.truncate(0);
+			ByteBuffer header = ByteBuffer.allocate(8 + logIds.length * 4);
+			header.putInt(MAGIC).putInt(logIds.length);
+			for(int id : logIds){
+				header.putInt(id);
+			}
+			header.flip();
+			SceneFile.writeFully(log, header);
+		}
+		return log;
+	}//openLog end
+
+	/**
+	 * Saves a checkpoint so it replaces the older one in one step, then
+	 * 		switches to its log and deletes the older files.
+	 * @param n
+	 * 			generation of the checkpoint
+	 * @param copy
+	 * 			scene to be saved
+	 * @throws IOException
+	 * 			if the checkpoint cannot be written
+	 */
+	void writeCheckpoint(int n, SceneSnapshot copy) throws IOException {
+
+		File tmp = new File(dir, "checkpoint-" + n + ".tmp");
+		SceneFile.save(copy, tmp.getPath());
+		RandomAccessFile file = new RandomAccessFile(tmp, "rw");
+		try{
+			file.getChannel().force(true);
+		}finally{
+			file.close();
+		}
+		if(!tmp.renameTo(checkpointFile(dir, n))){
+			throw new IOException("cannot rename " + tmp);
+		}
+
+		if(log != null){
+			log.close();
+			log = null;
+		}
+		for(int old = logGeneration; old < n; old++){
+			checkpointFile(dir, old).delete();
+			logFile(dir, old).delete();
+		}
+		logGeneration = n;
+		logIds = new int[copy.views.length];
+		for(int i = 0; i < logIds.length; i++){
+			logIds[i] = copy.views[i].id;
+		}
+	}//writeCheckpoint end
+
+	/**
+	 * Rebuilds a scene from the newest checkpoint in a directory and the
+	 * 		records logged after it. A record cut short at the end of the
+	 * 		log is ignored.
+	 * @param dir
+	 * 			journal directory
+	 * @return the recovered scene, or null if there is no checkpoint
+	 * @throws IOException
+	 * 			if a file cannot be read
+	 */
+	public static MainWindows recover(File dir) throws IOException {
+
+		int n = newestGeneration(dir);
+		if(n < 0){
+			return null;
+		}
+		MainWindows scene = SceneFile.load(checkpointFile(dir, n).getPath());
+		Windows[] loaded = new Windows[scene.windows.size()]; // bottom first
+		int i = 0;
+		for(Windows w : scene.windows){
+			loaded[i++] = w;
+		}
+
+		File logFile = logFile(dir, n);
+		if(!logFile.exists()){
+			return scene; // nothing was logged after the checkpoint
+		}
+		RandomAccessFile file = new RandomAccessFile(logFile, "r");
+		try{
+			FileChannel channel = file.getChannel();
+			MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+					channel.size());
+			if(in.remaining() < 4){
+				return scene; // log was created but its header never written
+			}
+			int magic = in.getInt();
+			Windows[] byId = loaded; // an old log numbers windows by place
+			if(magic == MAGIC || magic == MAGIC_V2){
+				if(in.remaining() < 4 || in.remaining() - 4 < 4L * in.getInt(in.position())){
+					return scene; // header cut short, so nothing was logged
+				}
+				if(in.getInt() != loaded.length){
+					throw new IOException("window count in " + logFile
+							+ " does not match its checkpoint");
+				}
+				// the windows get back the ids they were logged under
+				int[] ids = new int[loaded.length];
+				int highest = -1;
+				for(i = 0; i < ids.length; i++){
+					ids[i] = in.getInt();
+					if(ids[i] < 0){
+						throw new IOException("bad window id " + ids[i] + " in " + logFile);
+					}
+					highest = Math.max(highest, ids[i]);
+				}//for loop end
+				byId = new Windows[highest + 1];
+				for(i = 0; i < ids.length; i++){
+					loaded[i].id = ids[i];
+					byId[ids[i]] = loaded[i];
+				}//for loop end
+				scene.nextWindowId = highest + 1;
+			}else if(magic != MAGIC_V1){
+				return scene; // header never completely written
+			}
+			while(in.remaining() >= RECORD_BYTES){
+				byte op = in.get();
+				int id = in.getInt();
+				int x = in.getInt();
+				int y = in.getInt();
+				if(op == ADD_WINDOW){
+					if(in.remaining() < WINDOW_BYTES){
+						break; // record cut short at the end of the log
+					}
+					if(id < scene.nextWindowId){
+						throw new IOException("window id " + id + " added twice in " + logFile);
+					}
+					Windows w = new Windows(x, y, in.getInt(), in.getInt(), 
+							new Color(in.getInt(), true));
+					scene.nextWindowId = id; // the window gets back its logged id
+					scene.addWindow(w);
+					if(id >= byId.length){
+						byId = Arrays.copyOf(byId, Math.max(id + 1, byId.length * 2));
+					}
+					byId[id] = w;
+					continue;
+				}
+				if(id < 0 || id >= byId.length || byId[id] == null){
+					throw new IOException("bad window id " + id + " in " + logFile);
+				}
+				if(op == RAISE){
+					scene.index.raise(byId[id]);
+					scene.windows.raise(byId[id]);
+				}else if(op == MOVE){
+					scene.moveWindow(byId[id], x, y);
+				}else if(op == RESIZE){
+					scene.resizeWindow(byId[id], x, y);
+				}else{
+					// a click on the active window is deterministic, so
+					//		repeating it adds or removes the same squares
+					byId[id].handleClick(x, y);
+				}
+			}//while end
+		}finally{
+			file.close();
+		}
+		for(Windows w : scene.windows){
+			w.regrid(); // as if every resize had been released
+		}
+		return scene;
+	}//recover end
+
+	/**
+	 * @param dir
+	 * 			journal directory
+	 * @return the highest generation with a complete checkpoint, or -1
+	 * 		if there is none
+	 */
+	static int newestGeneration(File dir){
+
+		int newest = -1;
+		String[] names = dir.list();
+		if(names == null){
+			return newest;
+		}
+		for(String name : names){
+			if(name.startsWith("checkpoint-") && name.endsWith(".wms")){
+				try{
+					newest = Math.max(newest, Integer.parseInt(
+							name.substring(11, name.length() - 4)));
+				}catch(NumberFormatException e){
+					// not one of ours
+				}
+			}
+		}//for loop end
+		return newest;
+	}//newestGeneration end
+
+	/**
+	 * @return the checkpoint file of generation n
+	 */
+	static File checkpointFile(File dir, int n){
+		return new File(dir, "checkpoint-" + n + ".wms");
+	}
+
+	/**
+	 * @return the log file of generation n
+	 */
+	static File logFile(File dir, int n){
+		return new File(dir, "journal-" + n + ".log");
+	}
+}//OperationJournal end
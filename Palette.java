@@ -0,0 +1,173 @@
+import java.awt.Color;
+import java.util.Arrays;
+
+/**
+ * Global table of the colors squares are drawn in. Each distinct ARGB
+ * 		value is interned once and gets a short index, so a square only
+ * 		needs two bytes for its color, every square of a color is drawn
+ * 		with the same cached Color instead of one made per square, and
+ * 		squares of different windows with the same index can be drawn
+ * 		together.
+ *
+ * A palette holds at most 65536 colors, the number a short can index.
+ * 		Entries are never removed, so an index stays valid for as long as
+ * 		its palette is used. Once the current palette is full it is
+ * 		replaced by a new, empty generation: stores that need a new color
+ * 		move their squares over to it, interning only the colors they
+ * 		still use, and a full generation is dropped by the garbage
+ * 		collector when no store or snapshot uses it any more. Colors of
+ * 		windows that are gone are evicted that way instead of piling up.
+ *
+ * Interning takes a lock only for a color not seen before; looking up a
+ * 		known color or the Color of an index takes none, so any thread
+ * 		may draw while another interns.
+ * @author Grady Barrett
+ */
+public class Palette {
+
+	static final int CAPACITY = 1 << 16; // most colors a palette holds
+
+	// generation new stores and moved stores intern their colors in
+	static volatile Palette current = new Palette();
+
+	volatile int[] argbs = new int[16]; // ARGB value of each entry, by index
+	volatile Color[] colors = new Color[16]; // cached Color of each entry, by index
+
+	// open addressing hash table of index + 1 by ARGB value, 0 is empty
+	volatile int[] table = new int[64];
+
+	int size = 0; // number of entries, guarded by this
+
+	/**
+	 * Returns the index of a color, adding it if it is new.
+	 * @param argb
+	 * 			packed ARGB color
+	 * @return the palette index of the color, or -1 if the color is new
+	 * 		and the palette is full
+	 */
+	public int intern(int argb){
+
+		// most colors are already known, so look without the lock first;
+		//		a hit is only trusted if the entry holds the color
+		int[] t = table;
+		int[] known = argbs;
+		for(int slot = hash(argb) & (t.length - 1); t[slot] != 0; slot = (slot + 1) & (t.length - 1)){
+			int i = t[slot] - 1;
+			if(i < known.length && known[i] == argb){
+				return i;
+			}
+		}//for loop end
+		return add(argb);
+	}//intern end
+
+	/**
+	 * Adds a color under the lock, unless another thread added it first.
+	 * @param argb
+	 * 			packed ARGB color
+	 * @return the palette index of the color, or -1 if the palette is full
+	 */
+	private synchronized int add(int argb){
+
+		int[] t = table;
+		int slot = hash(argb) & (t.length - 1);
+		for(; t[slot] != 0; slot = (slot + 1) & (t.length - 1)){
+			if(argbs[t[slot] - 1] == argb){
+				return t[slot] - 1;
+			}
+		}//for loop end
+		if(size == CAPACITY){
+			return -1;
+		}
+
+		// the entry is written before the table points at it
+		int i = size++;
+		int[] newArgbs = argbs;
+		Color[] newColors = colors;
+		if(i == newArgbs.length){
+			newArgbs = Arrays.copyOf(newArgbs, i * 2);
+			newColors = Arrays.copyOf(newColors, i * 2);
+		}
+		newArgbs[i] = argb;
+		newColors[i] = new Color(argb, true);
+		colors = newColors;
+		argbs = newArgbs;
+
+		if(size * 2 > t.length){ // keeps the table at most half full
+			t = rehash(t.length * 2);
+		}else{
+			t[slot] = i + 1;
+		}
+		table = t;
+		return i;
+	}//add end
+
+	/**
+	 * Builds a bigger table holding every entry. Must hold the lock.
+	 * @param length
+	 * 			length of the new table, a power of two
+	 * @return the new table
+	 */
+	private int[] rehash(int length){
+
+		int[] t = new int[length];
+		for(int i = 0; i < size; i++){
+			int slot = hash(argbs[i]) & (length - 1);
+			while(t[slot] != 0){
+				slot = (slot + 1) & (length - 1);
+			}
+			t[slot] = i + 1;
+		}//for loop end
+		return t;
+	}//rehash end
+
+	/**
+	 * Starts a new generation once a palette is full. Every store that
+	 * 		finds the same palette full gets the same new one.
+	 * @param full
+	 * 			palette that could not take a new color
+	 * @return the palette new colors go in from now on
+	 */
+	static synchronized Palette next(Palette full){
+
+		if(current == full){
+			current = new Palette();
+		}
+		return current;
+	}//next end
+
+	/**
+	 * @param argb
+	 * 			packed ARGB color
+	 * @return the color with its bits spread, so nearby colors land in
+	 * 		different slots
+	 */
+	private static int hash(int argb){
+		int h = argb * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}//hash end
+
+	/**
+	 * @param index
+	 * 			palette index from intern
+	 * @return the packed ARGB color of the entry
+	 */
+	public int argb(short index){
+		return argbs[index & 0xFFFF];
+	}
+
+	/**
+	 * @param index
+	 * 			palette index from intern
+	 * @return the cached Color of the entry
+	 */
+	public Color color(short index){
+		return colors[index & 0xFFFF];
+	}
+
+	/**
+	 * @return the number of colors in the palette
+	 */
+	public synchronized int size(){
+		return size;
+	}
+}//Palette end
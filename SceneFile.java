@@ -0,0 +1,207 @@
+import java.awt.Color;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Saves and loads a whole scene in a compact binary format.
+ *
+ * The file starts with the int "WMS1" and a format version, followed by 
+ * 		one record per window from back to front, so file order is the 
+ * 		z-order and the last window is the active one. A window record is 
+ * 		x, y, width, height, square color and square count, followed by 
+ * 		the squares as five columns of ints: every x, then every y, 
+ * 		every width, every height and every ARGB color. All ints are big 
+ * 		endian. Since version 2 square locations are relative to the 
+ * 		window, as SquareStore keeps them; version 1 files with canvas 
+ * 		locations are still read.
+ *
+ * The location and size columns match the arrays in SquareStore, so 
+ * 		loading is a bulk copy per column and chunk out of a memory-mapped 
+ * 		file. 
+ * 		Colors are saved as ARGB, not as palette indices, since indices 
+ * 		depend on the order colors were first seen in. Records are written one 
+ * 		after another, and a reader stops at the first record that is cut 
+ * 		short, so a partly written file still loads up to its last 
+ * 		complete window.
+ * @author Grady Barrett
+ */
+public class SceneFile {
+
+	static final int MAGIC = 0x574D5331; // "WMS1"
+	static final int VERSION = 2; // format version written by save
+	static final int HEADER_BYTES = 8; // magic and version
+	static final int WINDOW_BYTES = 24; // fixed part of a window record
+	static final int SQUARE_BYTES = 20; // five ints per square
+
+	/**
+	 * Writes a scene to a file, replacing anything already there.
+	 * @param scene
+	 * 			scene to be saved
+	 * @param fileName
+	 * 			name of the file
+	 * @throws IOException
+	 * 			if the file cannot be written
+	 */
+	public static void save(MainWindows scene, String fileName) throws IOException {
+		save(scene.snapshot(), fileName);
+	}//save end
+
+	/**
+	 * Writes a snapshot of a scene to a file, replacing anything already 
+	 * 		there. The snapshot is immutable, so this can run on any thread.
+	 * @param scene
+	 * 			snapshot to be saved
+	 * @param fileName
+	 * 			name of the file
+	 * @throws IOException
+	 * 			if the file cannot be written
+	 */
+	public static void save(SceneSnapshot scene, String fileName) throws IOException {
+
+		RandomAccessFile file = new RandomAccessFile(fileName, "rw");
+		try{
+			FileChannel channel = file.getChannel();
+			channel.truncate(0);
+			ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+			header.putInt(MAGIC).putInt(VERSION).flip();
+			writeFully(channel, header);
+
+			ByteBuffer record = ByteBuffer.allocateDirect(WINDOW_BYTES);
+			for(int i = 0; i < scene.views.length; i++){
+				record = writeWindow(channel, record, scene.views[i]);
+			}//for loop end
+		}finally{
+			file.close();
+		}
+	}//save end
+
+	/**
+	 * Writes one window record.
+	 * @param channel
+	 * 			channel positioned at the end of the file
+	 * @param record
+	 * 			buffer to reuse if it is big enough
+	 * @param w
+	 * 			copy of the window to be written
+	 * @return the buffer used, kept for the next window
+	 * @throws IOException
+	 * 			if the channel cannot be written
+	 */
+	static ByteBuffer writeWindow(FileChannel channel, ByteBuffer record, 
+			SceneSnapshot.WindowView w) throws IOException {
+
+		SquareStorage squares = w.squares;
+		int n = squares.size();
+		int bytes = WINDOW_BYTES + n * SQUARE_BYTES;
+		if(record.capacity() < bytes){
+			record = ByteBuffer.allocateDirect(Math.max(bytes, record.capacity() * 2));
+		}
+		record.clear();
+		record.putInt(w.x).putInt(w.y).putInt(w.width).putInt(w.height)
+				.putInt(w.squareColor.getRGB()).putInt(n);
+
+		IntBuffer columns = record.asIntBuffer(); // starts at the current position
+		if(squares instanceof SquareStore){
+			((SquareStore) squares).putColumns(columns);
+		}else{ // other storage is read a value at a time, column by column
+			for(int i = 0; i < n; i++){
+				columns.put(i, squares.getX(i));
+				columns.put(n + i, squares.getY(i));
+				columns.put(2 * n + i, squares.getWidth(i));
+				columns.put(3 * n + i, squares.getHeight(i));
+				columns.put(4 * n + i, squares.getArgb(i));
+			}//for loop end
+		}
+		record.position(bytes);
+		record.flip();
+		writeFully(channel, record);
+		return record;
+	}//writeWindow end
+
+	/**
+	 * Loads a scene from a file through a memory map.
+	 * @param fileName
+	 * 			name of the file
+	 * @return a new scene holding every complete window in the file
+	 * @throws IOException
+	 * 			if the file cannot be read or is not a scene file
+	 */
+	public static MainWindows load(String fileName) throws IOException {
+
+		RandomAccessFile file = new RandomAccessFile(fileName, "r");
+		try{
+			FileChannel channel = file.getChannel();
+			MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, 
+					channel.size());
+			MainWindows scene = new MainWindows(0);
+			read(map, scene);
+			return scene;
+		}finally{
+			file.close(); // the map stays valid after the channel is closed
+		}
+	}//load end
+
+	/**
+	 * Reads window records into a scene until the buffer ends or a 
+	 * 		record is cut short.
+	 * @param in
+	 * 			buffer positioned at the start of the file
+	 * @param scene
+	 * 			scene receiving the windows
+	 * @throws IOException
+	 * 			if the buffer does not start with a scene file header
+	 */
+	static void read(ByteBuffer in, MainWindows scene) throws IOException {
+
+		if(in.remaining() < HEADER_BYTES || in.getInt() != MAGIC){
+			throw new IOException("not a scene file");
+		}
+		int version = in.getInt();
+		if(version != 1 && version != VERSION){
+			throw new IOException("unsupported scene file version " + version);
+		}
+
+		while(in.remaining() >= WINDOW_BYTES){
+			int start = in.position();
+			int x = in.getInt();
+			int y = in.getInt();
+			int width = in.getInt();
+			int height = in.getInt();
+			int color = in.getInt();
+			int n = in.getInt();
+			if(n < 0 || (long) n * SQUARE_BYTES > in.remaining()){
+				in.position(start);
+				return; // record was cut short
+			}
+
+			SquareStore s = new SquareStore(Math.max(n, 8));
+			if(version == 1){ // squares were saved at canvas locations
+				s.getColumns(in.asIntBuffer(), n, x, y);
+			}else{
+				s.getColumns(in.asIntBuffer(), n, 0, 0);
+			}
+			in.position(in.position() + n * SQUARE_BYTES);
+			// the window files the squares in its grid
+			scene.addWindow(new Windows(x, y, width, height, new Color(color, true), s));
+		}//while end
+	}//read end
+
+	/**
+	 * Writes the whole buffer to the channel.
+	 * @param channel
+	 * 			channel being written
+	 * @param buffer
+	 * 			bytes to be written
+	 * @throws IOException
+	 * 			if the channel cannot be written
+	 */
+	static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while(buffer.hasRemaining()){
+			channel.write(buffer);
+		}
+	}//writeFully end
+}//SceneFile end
@@ -0,0 +1,149 @@
+import java.awt.Color;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Builds random scenes of any size from a seed, so the same settings
+ * 		always give the same scene. Window sizes are spread evenly between
+ * 		a minimum and a maximum, windows are placed so their top left
+ * 		corner is on the canvas, and each window is filled with a random
+ * 		number of squares averaging squaresPerWindow. With offHeap set the
+ * 		squares are kept in OffHeapSquareStores instead of on the heap.
+ *
+ * Usage: java SceneGenerator [-windows n] [-squares n] [-seed n] [-offheap] file.wms
+ * @author Grady Barrett
+ */
+public class SceneGenerator {
+
+	long seed; // seed for the random number generator
+	int windowCount; // number of windows made
+	int minWidth = 40; // smallest window width
+	int maxWidth = 400; // largest window width
+	int minHeight = 40; // smallest window height
+	int maxHeight = 300; // largest window height
+	int squaresPerWindow = 0; // average number of squares put in each window
+	int canvasWidth = SimpleWindowsGUI.CANVAS_WIDTH; // width of the area windows are placed in
+	int canvasHeight = SimpleWindowsGUI.CANVAS_HEIGHT; // height of the area windows are placed in
+	boolean offHeap = false; // whether squares are kept outside the heap
+
+	/**
+	 * Constructor for a generator with the default sizes and no squares.
+	 * @param newSeed
+	 * 			seed for the random number generator
+	 * @param newWindowCount
+	 * 			number of windows made
+	 */
+	public SceneGenerator(long newSeed, int newWindowCount){
+		seed = newSeed;
+		windowCount = newWindowCount;
+	}//SceneGenerator end
+
+	/**
+	 * @return a new scene built from the settings
+	 */
+	public MainWindows generate(){
+
+		Random rand = new Random(seed); // one generator for the whole scene
+		MainWindows scene = new MainWindows(0);
+		for(int i = 0; i < windowCount; i++){
+			int width = between(rand, minWidth, maxWidth);
+			int height = between(rand, minHeight, maxHeight);
+			int x = rand.nextInt(Math.max(1, canvasWidth - width));
+			int y = rand.nextInt(Math.max(1, canvasHeight - height));
+			Color color = new Color(rand.nextInt(0x1000000));
+			Windows w = new Windows(x, y, width, height, color, offHeap 
+					? new OffHeapSquareStore(squaresPerWindow * 2 + 1) : new SquareStore());
+			if(squaresPerWindow > 0){
+				fill(rand, w, rand.nextInt(squaresPerWindow * 2 + 1));
+			}
+			scene.addWindow(w);
+		}//for loop end
+		return scene;
+	}//generate end
+
+	/**
+	 * Puts squares at random places inside a window. Squares are added
+	 * 		directly rather than by clicks, so they may overlap and none
+	 * 		are removed.
+	 * @param rand
+	 * 			random number generator
+	 * @param w
+	 * 			window to be filled
+	 * @param count
+	 * 			number of squares
+	 */
+	static void fill(Random rand, Windows w, int count){
+
+		// centers that keep the whole square inside the window, the same
+		//		rule Windows.handleClick uses
+		int rangeX = w.winWidth - w.SQ_WIDTH + 1;
+		int rangeY = w.winHeight - w.SQ_HEIGHT + 1;
+		if(rangeX <= 0 || rangeY <= 0){
+			return; // window is too small for a square
+		}
+		int argb = w.squareColor.getRGB();
+		for(int i = 0; i < count; i++){
+			w.grid.add(w.winUpperLeftX + 10 + rand.nextInt(rangeX),
+					w.winUpperLeftY + 10 + rand.nextInt(rangeY),
+					w.SQ_WIDTH, w.SQ_HEIGHT, argb);
+		}//for loop end
+	}//fill end
+
+	/**
+	 * @param rand
+	 * 			random number generator
+	 * @param low
+	 * 			smallest value
+	 * @param high
+	 * 			largest value
+	 * @return a random value from low to high inclusive
+	 */
+	static int between(Random rand, int low, int high){
+		return low + rand.nextInt(Math.max(1, high - low + 1));
+	}//between end
+
+	/**
+	 * Generates a scene and saves it with SceneFile.
+	 * @param args
+	 * 			see the class comment
+	 */
+	public static void main(String[] args) throws IOException {
+
+		int windows = 10000;
+		int squares = 100;
+		long seed = 1;
+		boolean offHeap = false;
+		String fileName = null;
+		for(int i = 0; i < args.length; i++){
+			if(args[i].equals("-windows")){
+				windows = Integer.parseInt(args[++i]);
+			}else if(args[i].equals("-squares")){
+				squares = Integer.parseInt(args[++i]);
+			}else if(args[i].equals("-seed")){
+				seed = Long.parseLong(args[++i]);
+			}else if(args[i].equals("-offheap")){
+				offHeap = true;
+			}else{
+				fileName = args[i];
+			}
+		}//for loop end
+		if(fileName == null){
+			System.err.println("usage: java SceneGenerator [-windows n] [-squares n] "
+					+ "[-seed n] [-offheap] file.wms");
+			return;
+		}
+
+		SceneGenerator generator = new SceneGenerator(seed, windows);
+		generator.squaresPerWindow = squares;
+		generator.offHeap = offHeap;
+		long start = System.nanoTime();
+		MainWindows scene = generator.generate();
+		long total = 0;
+		for(Windows w : scene.windows){
+			total += w.squares.size();
+		}
+		SceneFile.save(scene, fileName);
+		System.out.println(String.format("%d windows, %d squares in %.3f s", windows,
+				total, (System.nanoTime() - start) / 1e9));
+	}//main end
+}//SceneGenerator end
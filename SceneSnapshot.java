@@ -0,0 +1,331 @@
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+
+/**
+ * Immutable copy of a scene, for drawing on one thread while another 
+ * 		thread keeps changing the windows. Unchanged windows share their 
+ * 		WindowView with the previous snapshot, so only windows whose 
+ * 		squares changed are copied.
+ * @author Grady Barrett
+ */
+public class SceneSnapshot {
+
+	// copies of the windows from back to front, the last is the active one
+	final WindowView[] views;
+	
+	// visibility pass of each thread that draws snapshots, reused by 
+	//		every draw on that thread
+	private static final ThreadLocal<VisibilityPass> passes = new ThreadLocal<VisibilityPass>(){
+		protected VisibilityPass initialValue(){
+			return new VisibilityPass();
+		}
+	};
+
+	/**
+	 * Constructor that copies every window in a stack.
+	 * @param windows
+	 * 			windows to be copied
+	 */
+	public SceneSnapshot(WindowStack windows){
+
+		views = new WindowView[windows.size()];
+		int i = 0;
+		for(Windows w : windows){
+			views[i++] = w.snapshot();
+		}//for loop end
+	}//SceneSnapshot end
+
+	/**
+	 * Constructor that copies every window in an array.
+	 * @param windows
+	 * 			windows to be copied, from back to front
+	 */
+	public SceneSnapshot(Windows[] windows){
+
+		views = new WindowView[windows.length];
+		for(int i = 0; i < windows.length; i++){
+			views[i] = windows[i].snapshot();
+		}//for loop end
+	}//SceneSnapshot end
+
+	/**
+	 * @param windows
+	 * 			windows the snapshot was taken of
+	 * @return true if the snapshot still shows the windows as they are, 
+	 * 		so it can be handed out again instead of a new copy
+	 */
+	boolean matches(WindowStack windows){
+
+		if(windows.size() != views.length){
+			return false;
+		}
+		int i = views.length;
+		for(Windows w = windows.top(); w != null; w = w.below){
+			if(w.snapshot() != views[--i]){
+				return false;
+			}
+		}//for loop end
+		return true;
+	}//matches end
+
+	/**
+	 * @param windows
+	 * 			windows the snapshot was taken of, from back to front
+	 * @return true if the snapshot still shows the windows as they are, 
+	 * 		so it can be handed out again instead of a new copy
+	 */
+	boolean matches(Windows[] windows){
+
+		if(windows.length != views.length){
+			return false;
+		}
+		for(int i = 0; i < windows.length; i++){
+			if(windows[i].snapshot() != views[i]){
+				return false;
+			}
+		}//for loop end
+		return true;
+	}//matches end
+
+	/**
+	 * Draws the copied windows back to front, the same way 
+	 * 		MainWindows.draw draws the windows themselves. Windows outside 
+	 * 		the clip of g or hidden under the windows above them are 
+	 * 		skipped, and a window with many squares is drawn from a cached 
+	 * 		image.
+	 * @param g
+	 * 			Graphics object for drawing
+	 */
+	public void draw(Graphics g){
+
+		VisibilityPass pass = passes.get();
+		pass.run(views, pass.clipOf(g));
+		WindowView front = views.length == 0 ? null : views[views.length - 1];
+		for(int i = 0; i < pass.visibleViews.size(); i++){
+			WindowView v = pass.visibleViews.get(i);
+			v.draw(g, v == front, pass.occluders.get(i));
+		}//for loop end
+		if(WindowMetrics.ENABLED){
+			WindowMetrics.windowsDrawn.add(pass.visibleViews.size());
+		}
+	}//draw end
+
+	/**
+	 * Immutable copy of one window, with a cached image of it that is
+	 * 		built the first time it is drawn.
+	 */
+	public static class WindowView {
+
+		final int id; // Windows.id of the window copied
+		final int x; // window upper left x location
+		final int y; // window upper left y location
+		final int width; // window width
+		final int height; // window height
+		final int version; // Windows.version this copy was made from
+		final Color squareColor; // color of new squares in the window
+		final boolean clipSquares; // whether squares stick out of the window
+		final SquareStorage squares; // copy of the squares, never changed
+		
+		// cached opaque image of everything drawn inside getOpaqueBounds, 
+		//		or null until the view is first drawn from it; an image is 
+		//		never changed once built, so views share it freely
+		private BufferedImage surface;
+		
+		// focus state the border in surface was drawn for
+		private boolean surfaceFront;
+		
+		// image of an earlier copy of the window that surface is built 
+		//		from by patching damage, or null to build it from scratch
+		private BufferedImage base;
+		
+		// focus state the border in base was drawn for
+		private boolean baseFront;
+		
+		// area relative to the window whose squares differ from base
+		private Rectangle damage;
+
+		/**
+		 * Constructor that copies the geometry of a window.
+		 * @param w
+		 * 			window to be copied
+		 * @param newSquares
+		 * 			copy of the squares of the window, never changed
+		 */
+		WindowView(Windows w, SquareStorage newSquares){
+			id = w.id;
+			x = w.winUpperLeftX;
+			y = w.winUpperLeftY;
+			width = w.winWidth;
+			height = w.winHeight;
+			version = w.version;
+			squareColor = w.squareColor;
+			clipSquares = w.clipSquares;
+			squares = newSquares;
+		}//WindowView end
+
+		/**
+		 * Constructor for a window that changed since its last copy. The 
+		 * 		image of the last copy is kept, and the first draw copies 
+		 * 		it and redraws only the area whose squares changed, unless 
+		 * 		the window was resized.
+		 * @param w
+		 * 			window to be copied
+		 * @param newSquares
+		 * 			copy of the squares of the window, never changed
+		 * @param last
+		 * 			last copy of the window
+		 * @param changed
+		 * 			area relative to the window whose squares changed 
+		 * 				since last, empty if none did
+		 */
+		WindowView(Windows w, SquareStorage newSquares, WindowView last, 
+				Rectangle changed){
+			this(w, newSquares);
+			if(last.width != width || last.height != height){
+				return;
+			}
+			synchronized(last){
+				if(last.surface != null){
+					base = last.surface;
+					baseFront = last.surfaceFront;
+					damage = new Rectangle(changed);
+				}else if(last.base != null){
+					// last was never drawn, so its damage is still owed
+					base = last.base;
+					baseFront = last.baseFront;
+					damage = new Rectangle(last.damage);
+					if(damage.isEmpty()){
+						damage.setBounds(changed);
+					}else if(!changed.isEmpty()){
+						damage.add(changed);
+					}
+				}
+			}
+			if(base != null && damage.isEmpty()){
+				// a moved window looks the same, so the image is shared
+				surface = base;
+				surfaceFront = baseFront;
+				base = null;
+				damage = null;
+			}
+		}//WindowView end
+
+		/**
+		 * Draws the window like Windows.draw, from the cached image if it 
+		 * 		has enough squares to be worth one.
+		 * @param g
+		 * 			Graphics object for drawing
+		 * @param front
+		 * 			boolean that tells whether window to be drawn is the 
+		 * 				front/active window
+		 * @param occluders
+		 * 			opaque rectangles of higher windows, may be null
+		 */
+		void draw(Graphics g, boolean front, ArrayList<Rectangle> occluders){
+
+			if(!Windows.cacheSurfaces || squares.size() < Windows.cacheMinSquares){
+				Windows.drawFrame(g, x, y, width, height, front);
+				if(clipSquares){
+					Graphics sg = g.create();
+					sg.clipRect(x, y, width + 1, height + 1);
+					squares.draw(sg, occluders);
+					sg.dispose();
+				}else{
+					squares.draw(g, occluders);
+				}
+				return;
+			}
+			Windows.drawFrameLines(g, x, y, width, height, front);
+			g.drawImage(surface(front), x, y, null);
+		}//draw end
+
+		/**
+		 * Returns the cached image of the window, building it if there is 
+		 * 		none for the focus state. An image of an earlier copy or of 
+		 * 		the other focus state is copied and only the changed squares 
+		 * 		or the border are redrawn in it, the way Windows.draw patches 
+		 * 		its surface. Views are drawn from any thread, so this is 
+		 * 		synchronized; an image is never changed once returned.
+		 * @param front
+		 * 			boolean that tells whether window to be drawn is the 
+		 * 				front/active window
+		 * @return opaque image of everything drawn inside getOpaqueBounds
+		 */
+		synchronized BufferedImage surface(boolean front){
+
+			if(surface != null && surfaceFront == front){
+				return surface;
+			}
+			BufferedImage image = new BufferedImage(width + 1, height + 1, 
+					BufferedImage.TYPE_INT_RGB);
+			int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+			Graphics2D sg = image.createGraphics();
+			sg.translate(-x, -y);
+			if(surface == null && base == null){
+				Windows.drawFrame(sg, x, y, width, height, front);
+				squares.fill(sg, pixels, width + 1, x, y, null, null);
+			}else{
+				BufferedImage from = surface != null ? surface : base;
+				boolean fromFront = surface != null ? surfaceFront : baseFront;
+				System.arraycopy(((DataBufferInt) from.getRaster().getDataBuffer()).getData(), 
+						0, pixels, 0, pixels.length);
+				if(surface == null){
+					patch(sg, pixels, front, new Rectangle(x + damage.x, 
+							y + damage.y, damage.width, damage.height));
+				}
+				if(fromFront != front){
+					// only the border changes color, so only the border 
+					//		band and the squares lying on it are redrawn
+					patch(sg, pixels, front, new Rectangle(x, y, 3, height + 1));
+					patch(sg, pixels, front, new Rectangle(x, y, width + 1, 3));
+					patch(sg, pixels, front, new Rectangle(x + width, y, 1, height + 1));
+					patch(sg, pixels, front, new Rectangle(x, y + height, width + 1, 1));
+				}
+			}
+			sg.dispose();
+			surface = image;
+			surfaceFront = front;
+			base = null;
+			damage = null;
+			return surface;
+		}//surface end
+
+		/**
+		 * Redraws the frame and the squares inside part of an image of the 
+		 * 		window, like Windows.patchSurface.
+		 * @param sg
+		 * 			Graphics object drawing into the image
+		 * @param pixels
+		 * 			pixels of the image, one int per pixel
+		 * @param front
+		 * 			focus state the border is drawn for
+		 * @param changed
+		 * 			area of the canvas to be redrawn
+		 */
+		private void patch(Graphics2D sg, int[] pixels, boolean front, Rectangle changed){
+			Windows.fillFrame(pixels, x, y, width, height, front, changed);
+			squares.fill(sg, pixels, width + 1, x, y, changed, null);
+		}//patch end
+
+		/**
+		 * @return the area that draw paints completely, the white fill and 
+		 * 		the outer border
+		 */
+		Rectangle getOpaqueBounds(){
+			return new Rectangle(x, y, width + 1, height + 1);
+		}//getOpaqueBounds end
+
+		/**
+		 * @return the area painted by draw, including the border and the 
+		 * 		shadow above and to the right of the window
+		 */
+		Rectangle getBounds(){
+			return new Rectangle(x, y - 3, width + 8, height + 6);
+		}//getBounds end
+	}//WindowView end
+}//SceneSnapshot end
@@ -3,8 +3,10 @@ import java.awt.BorderLayout;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics;
+import java.awt.Rectangle;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
+import java.awt.event.MouseMotionListener;
 import javax.swing.JFrame;
 import javax.swing.JPanel;
 
@@ -15,7 +17,8 @@ import javax.swing.JPanel;
  * responsible for updating the window information based on 
  * the location of the mouse clicks.
  */
-public class SimpleWindowsGUI extends JFrame implements MouseListener {
+public class SimpleWindowsGUI extends JFrame implements MouseListener,
+		MouseMotionListener {
 
 	/** The canvas where the windows are drawn. */
 	private RectanglesCanvas canvas;
@@ -23,6 +26,10 @@ public class SimpleWindowsGUI extends JFrame implements MouseListener {
 	/** The object that manages the window data. */
 	private SimpleWindowManager model;
 	
+	/** Applies clicks off the Event Dispatch Thread, or null if the
+	 * window manager cannot hand out snapshots. */
+	private InputPipeline pipeline;
+	
 	/** The default width of the canvas */
 	public static final int CANVAS_WIDTH = 800;
 	/** The default height of the canvas */
@@ -40,6 +47,10 @@ public class SimpleWindowsGUI extends JFrame implements MouseListener {
 		
 		this.add(canvas = new RectanglesCanvas(), BorderLayout.CENTER);
 		canvas.addMouseListener(this);
+		canvas.addMouseMotionListener(this);
+		if (mod instanceof SnapshotSource) {
+			pipeline = new InputPipeline(mod, canvas);
+		}
 
 		this.pack();
 		this.setVisible(true);
@@ -61,27 +72,125 @@ public class SimpleWindowsGUI extends JFrame implements MouseListener {
 		
 		/**
 		 * Draws this component by calling the draw method
-		 * of the window manager.
+		 * of the window manager, or of its latest snapshot
+		 * when clicks are handled off the Event Dispatch Thread.
 		 */
 		public void paintComponent( Graphics g ) {
+			long start = 0;
+			if (WindowMetrics.ENABLED) {
+				start = System.nanoTime();
+				WindowMetrics.frameStart();
+			}
 			super.paintComponent(g);
-			model.draw(g);
+			if (pipeline != null) {
+				pipeline.snapshot().draw(g);
+			} else {
+				model.draw(g);
+			}
+			if (WindowMetrics.ENABLED) {
+				WindowMetrics.frameEnd(System.nanoTime() - start);
+			}
 		}
 	}
 
 	/**
 	 * When mouse is clicked, the handleClick method in the
-	 * window manager is called.
+	 * window manager is called. If the window manager tracks
+	 * damage, only the changed area is repainted. With a
+	 * pipeline the click is only queued; the pipeline applies
+	 * it, schedules the repaint and records the click latency.
 	 * @param e the mouse event
 	 */
 	public void mouseClicked(MouseEvent e) {
+		if (WindowMetrics.ENABLED && pipeline == null) {
+			long start = System.nanoTime();
+			applyClick(e);
+			WindowMetrics.click.record(System.nanoTime() - start);
+		} else {
+			applyClick(e);
+		}
+	}
+	
+	/**
+	 * Passes a click to the pipeline or the window manager and
+	 * repaints what changed.
+	 * @param e the mouse event
+	 */
+	private void applyClick(MouseEvent e) {
+		if (pipeline != null) {
+			pipeline.click(e.getX(), e.getY());
+			return;
+		}
 		model.handleClick(e.getX(), e.getY());
-		canvas.repaint();
+		repaintDamage();
+	}
+	
+	/**
+	 * Repaints what the window manager changed: only the damage if
+	 * it tracks damage, otherwise the whole canvas.
+	 */
+	private void repaintDamage() {
+		if (model instanceof DamageTracking) {
+			Rectangle damage = ((DamageTracking) model).takeDamage();
+			if (damage != null) {
+				canvas.repaint(damage);
+			}
+		} else {
+			canvas.repaint();
+		}
+	}
+
+	/**
+	 * Starts a drag if the window manager can move windows.
+	 * @param e the mouse event
+	 */
+	public void mousePressed(MouseEvent e) {
+		mouse(EventRing.PRESS, e);
+	}
+
+	/**
+	 * Moves or resizes the window being dragged.
+	 * @param e the mouse event
+	 */
+	public void mouseDragged(MouseEvent e) {
+		mouse(EventRing.DRAG, e);
+	}
+
+	/**
+	 * Ends a drag.
+	 * @param e the mouse event
+	 */
+	public void mouseReleased(MouseEvent e) {
+		mouse(EventRing.RELEASE, e);
+	}
+
+	/**
+	 * Passes a press, drag or release to the pipeline, or straight
+	 * to the window manager and repaints what changed.
+	 * @param type EventRing.PRESS, DRAG or RELEASE
+	 * @param e the mouse event
+	 */
+	private void mouse(int type, MouseEvent e) {
+		if (!(model instanceof DragHandling)) {
+			return;
+		}
+		if (pipeline != null) {
+			pipeline.mouse(type, e.getX(), e.getY());
+			return;
+		}
+		DragHandling drags = (DragHandling) model;
+		if (type == EventRing.PRESS) {
+			drags.handlePress(e.getX(), e.getY());
+		} else if (type == EventRing.DRAG) {
+			drags.handleDrag(e.getX(), e.getY());
+		} else {
+			drags.handleRelease(e.getX(), e.getY());
+		}
+		repaintDamage();
 	}
 
 	// These methods are unused.
 	public void mouseEntered(MouseEvent e) { }
 	public void mouseExited(MouseEvent e) { }
-	public void mousePressed(MouseEvent e) { }
-	public void mouseReleased(MouseEvent e) { }
+	public void mouseMoved(MouseEvent e) { }
 }
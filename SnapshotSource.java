@@ -0,0 +1,14 @@
+/**
+ * Implemented by window managers that can hand out an immutable copy of 
+ * their scene, so it can be drawn on one thread while the window manager 
+ * is changed on another.
+ * @author Grady Barrett
+ */
+public interface SnapshotSource {
+
+	/**
+	 * Must be called on the thread that changes the window manager.
+	 * @return an immutable copy of the current scene
+	 */
+	SceneSnapshot snapshot();
+}
@@ -0,0 +1,327 @@
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.util.Arrays;
+
+/**
+ * Bucketed grid over the squares of one window. Each cell holds the
+ * 		store indices of the squares whose center point falls in
+ * 		it, with cells the size of a square, so a click can only hit
+ * 		squares in the few cells around it. Cells are laid out from the 
+ * 		upper left corner of the window, like the squares in the store, 
+ * 		so moving the window moves the grid with it.
+ * @author Grady Barrett
+ */
+public class SquareGrid {
+
+	SquareStorage store; // squares being indexed
+	int cellWidth; // width of a cell, the width of a square
+	int cellHeight; // height of a cell, the height of a square
+	int cols; // number of grid columns
+	int rows; // number of grid rows
+
+	int[][] cells; // store indices filed in each cell, by row * cols + col
+	int[] counts; // number of indices used in each cell
+	
+	// area returned by removeAt, reused by every call
+	private Rectangle removed = new Rectangle();
+	
+	// part of the area being filled that lies on the image, reused by 
+	//		every call to fill
+	private Rectangle fillClip = new Rectangle();
+	
+	// store indices gathered by near, reused by every call
+	private int[] found = new int[16];
+	
+	// area of the square checked by coversLater, reused by every call
+	private Rectangle probe = new Rectangle();
+
+	/**
+	 * Constructor that builds an empty grid covering a window.
+	 * @param newStore
+	 * 			store holding the squares of the window
+	 * @param width
+	 * 			width of the window
+	 * @param height
+	 * 			height of the window
+	 * @param newCellWidth
+	 * 			width of the squares stored in the grid
+	 * @param newCellHeight
+	 * 			height of the squares stored in the grid
+	 */
+	public SquareGrid(SquareStorage newStore, int width, int height, 
+			int newCellWidth, int newCellHeight){
+
+		store = newStore;
+		cellWidth = newCellWidth;
+		cellHeight = newCellHeight;
+		cols = width / cellWidth + 1;
+		rows = height / cellHeight + 1;
+		cells = new int[cols * rows][];
+		counts = new int[cols * rows];
+	}//SquareGrid end
+
+	/**
+	 * Adds a square to the store and files it in the cell holding its
+	 * 		center point.
+	 * @param x
+	 * 			x location of the square
+	 * @param y
+	 * 			y location of the square
+	 * @param w
+	 * 			width of the square
+	 * @param h
+	 * 			height of the square
+	 * @param argb
+	 * 			packed ARGB color of the square
+	 */
+	public void add(int x, int y, int w, int h, int argb){
+
+		file(store.add(x, y, w, h, argb));
+	}//add end
+
+	/**
+	 * Files every square already in the store, for a store that was 
+	 * 		filled directly, such as by SceneFile.
+	 */
+	public void fileAll(){
+		for(int i = 0; i < store.size(); i++){
+			file(i);
+		}
+	}//fileAll end
+
+	/**
+	 * Files a square in the cell holding its center point.
+	 * @param i
+	 * 			store index of the square
+	 */
+	private void file(int i){
+
+		int cell = cellOf(i);
+
+		if(cells[cell] == null){
+			cells[cell] = new int[2];
+		}else if(counts[cell] == cells[cell].length){
+			cells[cell] = Arrays.copyOf(cells[cell], counts[cell] * 2);
+		}
+		cells[cell][counts[cell]++] = i;
+	}//file end
+
+	/**
+	 * Removes every square that contains the point from the grid and the
+	 * 		store. Only the cells whose squares could reach the point are
+	 * 		searched.
+	 * @param x
+	 * 			x coordinate of user click
+	 * @param y
+	 * 			y coordinate of user click
+	 * @return the union of the areas of the removed squares and of any 
+	 * 		square that now overlaps others in a different order, or null 
+	 * 		if no square was removed; the rectangle is reused by the next 
+	 * 		call
+	 */
+	public Rectangle removeAt(int x, int y){
+
+		// union of the areas of the removed squares, empty while right < left
+		int left = Integer.MAX_VALUE;
+		int top = Integer.MAX_VALUE;
+		int right = Integer.MIN_VALUE;
+		int bottom = Integer.MIN_VALUE;
+
+		// a square contains the point only if its center is within half
+		//		a square of it
+		int firstCol = col(x - cellWidth / 2);
+		int lastCol = col(x + cellWidth / 2);
+		int firstRow = row(y - cellHeight / 2);
+		int lastRow = row(y + cellHeight / 2);
+
+		for(int r = firstRow; r <= lastRow; r++){
+			for(int c = firstCol; c <= lastCol; c++){
+				int cell = r * cols + c;
+				// walks backwards so entries swapped into a hole have
+				//		already been checked
+				for(int j = counts[cell] - 1; j >= 0; j--){
+					int i = cells[cell][j];
+					if(store.isInside(i, x, y)){
+						int squareX = store.getX(i) - 10 + store.getWindowX();
+						int squareY = store.getY(i) - 10 + store.getWindowY();
+						left = Math.min(left, squareX);
+						top = Math.min(top, squareY);
+						right = Math.max(right, squareX + store.getWidth(i));
+						bottom = Math.max(bottom, squareY + store.getHeight(i));
+						cells[cell][j] = cells[cell][--counts[cell]];
+						int moved = store.remove(i);
+						if(moved != -1){
+							renumber(moved, i);
+							// the last square now comes before squares it 
+							//		was drawn over, so where it overlaps them 
+							//		it changed as well
+							if(coversLater(i)){
+								left = Math.min(left, probe.x);
+								top = Math.min(top, probe.y);
+								right = Math.max(right, probe.x + probe.width);
+								bottom = Math.max(bottom, probe.y + probe.height);
+							}
+						}
+					}
+				}
+			}
+		}//for loop end
+		if(right < left){
+			return null;
+		}
+		removed.setBounds(left, top, right - left, bottom - top);
+		return removed;
+	}//removeAt end
+
+	/**
+	 * Draws the squares that overlap an area, searching only the cells 
+	 * 		whose squares could reach it.
+	 * @param g
+	 * 			Graphics object for drawing
+	 * @param area
+	 * 			area to be redrawn
+	 */
+	public void draw(Graphics g, Rectangle area){
+
+		int n = near(area);
+		for(int j = 0; j < n; j++){
+			if(area.intersects(store.getBounds(found[j]))){
+				store.draw(g, found[j]);
+			}
+		}//for loop end
+	}//draw end
+
+	/**
+	 * @param i
+	 * 			store index of a square
+	 * @return true if square i overlaps a square with a higher index, 
+	 * 		which is drawn after it; probe is left holding the area of 
+	 * 		square i
+	 */
+	private boolean coversLater(int i){
+
+		probe.setBounds(store.getX(i) - 10 + store.getWindowX(), 
+				store.getY(i) - 10 + store.getWindowY(), 
+				store.getWidth(i), store.getHeight(i));
+		int n = near(probe);
+		for(int j = n - 1; j >= 0 && found[j] > i; j--){
+			if(probe.intersects(store.getX(found[j]) - 10 + store.getWindowX(), 
+					store.getY(found[j]) - 10 + store.getWindowY(), 
+					store.getWidth(found[j]), store.getHeight(found[j]))){
+				return true;
+			}
+		}//for loop end
+		return false;
+	}//coversLater end
+
+	/**
+	 * Gathers the squares filed in the cells whose squares could reach an 
+	 * 		area into found, in store order. Cells hold their squares in 
+	 * 		the order they were filed, which a removal changes, and where 
+	 * 		translucent squares overlap only store order blends them the 
+	 * 		way a full redraw does.
+	 * @param area
+	 * 			area to be redrawn
+	 * @return the number of store indices in found
+	 */
+	private int near(Rectangle area){
+
+		int firstCol = col(area.x - cellWidth / 2);
+		int lastCol = col(area.x + area.width + cellWidth / 2);
+		int firstRow = row(area.y - cellHeight / 2);
+		int lastRow = row(area.y + area.height + cellHeight / 2);
+
+		int n = 0;
+		for(int r = firstRow; r <= lastRow; r++){
+			for(int c = firstCol; c <= lastCol; c++){
+				int cell = r * cols + c;
+				if(n + counts[cell] > found.length){
+					found = Arrays.copyOf(found, Math.max(found.length * 2, n + counts[cell]));
+				}
+				for(int j = 0; j < counts[cell]; j++){
+					found[n++] = cells[cell][j];
+				}
+			}
+		}//for loop end
+		Arrays.sort(found, 0, n);
+		return n;
+	}//near end
+
+	/**
+	 * Fills the squares that overlap an area straight into the pixels of 
+	 * 		an opaque image, searching only the cells whose squares could 
+	 * 		reach it.
+	 * @param g
+	 * 			Graphics object drawing into the same image
+	 * @param pixels
+	 * 			pixels of a TYPE_INT_RGB image, one int per pixel
+	 * @param scanWidth
+	 * 			width of the image
+	 * @param originX
+	 * 			canvas x location of the left column of the image
+	 * @param originY
+	 * 			canvas y location of the top row of the image
+	 * @param area
+	 * 			area to be redrawn
+	 */
+	public void fill(Graphics g, int[] pixels, int scanWidth, int originX, 
+			int originY, Rectangle area){
+
+		Rectangle clip = SquareStore.clipToImage(pixels, scanWidth, originX, 
+				originY, area, fillClip);
+		if(clip.isEmpty()){
+			return;
+		}
+		int n = near(clip);
+		for(int j = 0; j < n; j++){
+			// fill writes nothing for a square outside the clip
+			store.fill(g, pixels, scanWidth, originX, originY, clip, found[j]);
+		}//for loop end
+	}//fill end
+
+	/**
+	 * Updates the cell entry of a square whose store index changed.
+	 * @param oldIndex
+	 * 			index the square had before the store moved it
+	 * @param newIndex
+	 * 			index the square has now
+	 */
+	private void renumber(int oldIndex, int newIndex){
+
+		int cell = cellOf(newIndex);
+		for(int j = 0; j < counts[cell]; j++){
+			if(cells[cell][j] == oldIndex){
+				cells[cell][j] = newIndex;
+				return;
+			}
+		}//for loop end
+	}//renumber end
+
+	/**
+	 * @param i
+	 * 			store index of a square
+	 * @return the cell holding the center point of square i
+	 */
+	private int cellOf(int i){
+		return row(store.getY(i) + store.getWindowY()) * cols 
+				+ col(store.getX(i) + store.getWindowX());
+	}
+
+	/**
+	 * @param x
+	 * 			canvas x coordinate
+	 * @return grid column holding x, clamped to the grid
+	 */
+	private int col(int x){
+		return Math.min(cols - 1, Math.max(0, Math.floorDiv(x - store.getWindowX(), cellWidth)));
+	}
+
+	/**
+	 * @param y
+	 * 			canvas y coordinate
+	 * @return grid row holding y, clamped to the grid
+	 */
+	private int row(int y){
+		return Math.min(rows - 1, Math.max(0, Math.floorDiv(y - store.getWindowY(), cellHeight)));
+	}
+}//SquareGrid end
@@ -0,0 +1,218 @@
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+
+/**
+ * Storage for the squares of one window. Square i is a center location,
+ * 		a width, a height and a packed ARGB color, with the location kept
+ * 		relative to the upper left corner of the window. Every method
+ * 		takes and returns canvas coordinates unless it says otherwise.
+ * 		Removal moves the last square into the hole, so indices stay
+ * 		packed and only the last square ever changes index.
+ *
+ * SquareStore keeps the squares in int arrays on the heap,
+ * 		OffHeapSquareStore keeps them in a direct or memory-mapped buffer.
+ * @author Grady Barrett
+ */
+public interface SquareStorage {
+
+	/**
+	 * Appends a square.
+	 * @param newX
+	 * 			canvas x location of the square
+	 * @param newY
+	 * 			canvas y location of the square
+	 * @param newWidth
+	 * 			width of the square
+	 * @param newHeight
+	 * 			height of the square
+	 * @param newArgb
+	 * 			packed ARGB color of the square
+	 * @return the index of the new square
+	 */
+	int add(int newX, int newY, int newWidth, int newHeight, int newArgb);
+
+	/**
+	 * Removes a square by moving the last square into its place.
+	 * @param i
+	 * 			index of the square to be removed
+	 * @return the old index of the square that now sits at i, or -1 if
+	 * 		the removed square was the last one
+	 */
+	int remove(int i);
+
+	/**
+	 * @return the number of squares held
+	 */
+	int size();
+
+	/**
+	 * @param i
+	 * 			index of a square
+	 * @return x location of square i, relative to the window
+	 */
+	int getX(int i);
+
+	/**
+	 * @param i
+	 * 			index of a square
+	 * @return y location of square i, relative to the window
+	 */
+	int getY(int i);
+
+	/**
+	 * @param i
+	 * 			index of a square
+	 * @return width of square i
+	 */
+	int getWidth(int i);
+
+	/**
+	 * @param i
+	 * 			index of a square
+	 * @return height of square i
+	 */
+	int getHeight(int i);
+
+	/**
+	 * @param i
+	 * 			index of a square
+	 * @return packed ARGB color of square i
+	 */
+	int getArgb(int i);
+
+	/**
+	 * @return canvas x location the squares are relative to
+	 */
+	int getWindowX();
+
+	/**
+	 * @return canvas y location the squares are relative to
+	 */
+	int getWindowY();
+
+	/**
+	 * Moves every square along with its window.
+	 * @param newWindowX
+	 * 			new canvas x location of the window
+	 * @param newWindowY
+	 * 			new canvas y location of the window
+	 */
+	void moveTo(int newWindowX, int newWindowY);
+
+	/**
+	 * @param i
+	 * 			index of a square
+	 * @param px
+	 * 			x coordinate of user click
+	 * @param py
+	 * 			y coordinate of user click
+	 * @return true if the user click is within square i
+	 */
+	boolean isInside(int i, int px, int py);
+
+	/**
+	 * @param i
+	 * 			index of a square
+	 * @return the area painted by square i
+	 */
+	Rectangle getBounds(int i);
+
+	/**
+	 * Draws every square that falls inside the clip of g.
+	 * @param g
+	 * 			Graphics object for drawing
+	 */
+	void draw(Graphics g);
+
+	/**
+	 * Draws every square that falls inside the clip of g and is not
+	 * 		completely covered by one of the occluders.
+	 * @param g
+	 * 			Graphics object for drawing
+	 * @param occluders
+	 * 			opaque rectangles drawn over the squares later, may be null
+	 */
+	void draw(Graphics g, ArrayList<Rectangle> occluders);
+
+	/**
+	 * Draws one square.
+	 * @param g
+	 * 			Graphics object for drawing
+	 * @param i
+	 * 			index of the square
+	 */
+	void draw(Graphics g, int i);
+
+	/**
+	 * Fills every square that falls inside an area and is not completely
+	 * 		covered by one of the occluders straight into the pixels of an
+	 * 		opaque image, with the same result as draw.
+	 * @param g
+	 * 			Graphics object drawing into the same image
+	 * @param pixels
+	 * 			pixels of a TYPE_INT_RGB image, one int per pixel
+	 * @param scanWidth
+	 * 			width of the image
+	 * @param originX
+	 * 			canvas x location of the left column of the image
+	 * @param originY
+	 * 			canvas y location of the top row of the image
+	 * @param area
+	 * 			canvas area being drawn, or null for the whole image
+	 * @param occluders
+	 * 			opaque rectangles drawn over the squares later, may be null
+	 */
+	void fill(Graphics g, int[] pixels, int scanWidth, int originX,
+			int originY, Rectangle area, ArrayList<Rectangle> occluders);
+
+	/**
+	 * Fills one square straight into the pixels of an opaque image.
+	 * @param g
+	 * 			Graphics object drawing into the same image, used for
+	 * 				translucent squares, which are cut to clip first so 
+	 * 				the clip of g does not matter
+	 * @param pixels
+	 * 			pixels of a TYPE_INT_RGB image, one int per pixel
+	 * @param scanWidth
+	 * 			width of the image
+	 * @param originX
+	 * 			canvas x location of the left column of the image
+	 * @param originY
+	 * 			canvas y location of the top row of the image
+	 * @param clip
+	 * 			canvas area that may be written, inside the image
+	 * @param i
+	 * 			index of the square
+	 */
+	void fill(Graphics g, int[] pixels, int scanWidth, int originX,
+			int originY, Rectangle clip, int i);
+
+	/**
+	 * @param width
+	 * 			width of the window
+	 * @param height
+	 * 			height of the window
+	 * @return true if every square lies inside a window of the given
+	 * 		size, so drawing them needs no clipping
+	 */
+	boolean fitsIn(int width, int height);
+
+	/**
+	 * @return a new storage holding a copy of the squares, which is never
+	 * 		changed by changes to this one
+	 */
+	SquareStorage copy();
+
+	/**
+	 * Makes storage for an immutable copy of a window that was moved.
+	 * 		The squares may be shared with this storage, so neither may be
+	 * 		changed afterwards.
+	 * @param newWindowX
+	 * 			canvas x location of the moved window
+	 * @param newWindowY
+	 * 			canvas y location of the moved window
+	 * @return storage holding the same squares relative to the new location
+	 */
+	SquareStorage movedTo(int newWindowX, int newWindowY);
+}
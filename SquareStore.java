@@ -0,0 +1,854 @@
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Stores the squares of one window in parallel arrays instead of one
+ * 		Square object per square. The arrays are cut into chunks of 4096 
+ * 		squares, and square i is made of x[j], y[j], w[j], h[j] and 
+ * 		color[j] of chunk i / 4096 with j = i % 4096, where color[j] is the 
+ * 		index of its ARGB color in the global 
+ * 		Palette, which takes two bytes and shares one cached Color with 
+ * 		every square of that color in any window. When the palette 
+ * 		generation a store uses is full, the store moves its squares to 
+ * 		the next one; a store whose own squares use more colors than a 
+ * 		palette holds keeps the ARGB value of each square in argb[j] 
+ * 		instead. Locations use the same center-based 
+ * 		coordinates as the Square class but relative to the upper left 
+ * 		corner of the window, windowX and windowY, so moving the window 
+ * 		only changes those two. 
+ * 		Every method takes and returns canvas coordinates. Removal moves 
+ * 		the last square into the hole, so the arrays stay packed and only 
+ * 		the last square ever changes index.
+ *
+ * copy shares the chunks the way OffHeapSquareStore does. Each copy 
+ * 		starts a new epoch, and a chunk from an earlier epoch is copied 
+ * 		the first time this store writes a square a copy can see, so a 
+ * 		click after a snapshot copies the one or two chunks it writes 
+ * 		instead of every square of the window.
+ * @author Grady Barrett
+ */
+public class SquareStore implements SquareStorage {
+
+	static final int CHUNK_SHIFT = 12; // log2 of the squares in a chunk
+	static final int CHUNK_SQUARES = 1 << CHUNK_SHIFT; // squares in a full chunk
+	static final int CHUNK_MASK = CHUNK_SQUARES - 1; // index of a square in its chunk
+	static final int MAX_SQUARES = Integer.MAX_VALUE; // most squares a store holds
+
+	Chunk[] chunks = new Chunk[1]; // square chunks, only the first may be smaller than full
+	int[] chunkEpochs = new int[1]; // epoch each chunk was made in
+	int chunkCount = 0; // number of chunks in use
+	int epoch = 0; // bumped by every copy, chunks from older epochs are shared
+	int sharedHigh = 0; // most squares any copy holds, squares past it are never shared
+	boolean wide = false; // whether chunks keep argb instead of color, once there are more colors than a palette
+	Palette palette = Palette.current; // generation the color indices belong to
+	Color lastColor = null; // Color made for the most recently drawn square, once argb is used
+	int size = 0; // number of squares in the store
+	int windowX = 0; // canvas x location the squares are relative to
+	int windowY = 0; // canvas y location the squares are relative to
+
+	// clip bounds read by clipOf, one rectangle for each drawing thread
+	private static final ThreadLocal<Rectangle> clips = new ThreadLocal<Rectangle>(){
+		protected Rectangle initialValue(){
+			return new Rectangle();
+		}
+	};
+
+	/**
+	 * Columns of up to CHUNK_SQUARES squares. Either color or argb is 
+	 * 		used, as the store is wide or not.
+	 */
+	static class Chunk {
+
+		int[] x; // x location of each square
+		int[] y; // y location of each square
+		int[] w; // width of each square
+		int[] h; // height of each square
+		short[] color; // palette index of the color of each square, or null
+		int[] argb; // ARGB color of each square, or null
+
+		/**
+		 * Constructor for an empty chunk.
+		 * @param capacity
+		 * 			number of squares the chunk holds
+		 * @param wide
+		 * 			whether colors are kept as ARGB values
+		 */
+		Chunk(int capacity, boolean wide){
+			x = new int[capacity];
+			y = new int[capacity];
+			w = new int[capacity];
+			h = new int[capacity];
+			if(wide){
+				argb = new int[capacity];
+			}else{
+				color = new short[capacity];
+			}
+		}//Chunk end
+
+		/**
+		 * Constructor for a copy of a chunk.
+		 * @param source
+		 * 			chunk to be copied
+		 * @param capacity
+		 * 			number of squares the copy holds, at least as many as 
+		 * 				source
+		 */
+		Chunk(Chunk source, int capacity){
+			x = Arrays.copyOf(source.x, capacity);
+			y = Arrays.copyOf(source.y, capacity);
+			w = Arrays.copyOf(source.w, capacity);
+			h = Arrays.copyOf(source.h, capacity);
+			color = source.color == null ? null : Arrays.copyOf(source.color, capacity);
+			argb = source.argb == null ? null : Arrays.copyOf(source.argb, capacity);
+		}//Chunk end
+	}//Chunk end
+
+	/**
+	 * Constructor for an empty store.
+	 */
+	public SquareStore(){
+		this(8);
+	}//SquareStore end
+
+	/**
+	 * Constructor for an empty store with room for a number of squares.
+	 * @param capacity
+	 * 			number of squares the store holds before it grows
+	 */
+	public SquareStore(int capacity){
+		chunks[0] = new Chunk(Math.min(Math.max(capacity, 1), CHUNK_SQUARES), false);
+		chunkCount = 1;
+	}//SquareStore end
+
+	/**
+	 * Constructor for a store sharing the chunks of another, used by copy 
+	 * 		and movedTo. No chunk belongs to the new store, so it copies any 
+	 * 		chunk before writing to it.
+	 * @param source
+	 * 			store whose squares are shared
+	 * @param newWindowX
+	 * 			canvas x location the squares are relative to
+	 * @param newWindowY
+	 * 			canvas y location the squares are relative to
+	 */
+	private SquareStore(SquareStore source, int newWindowX, int newWindowY){
+		chunks = Arrays.copyOf(source.chunks, source.chunkCount);
+		chunkEpochs = new int[chunks.length];
+		Arrays.fill(chunkEpochs, -1);
+		chunkCount = source.chunkCount;
+		sharedHigh = MAX_SQUARES; // every square may be seen by the source
+		wide = source.wide;
+		palette = source.palette;
+		size = source.size;
+		windowX = newWindowX;
+		windowY = newWindowY;
+	}//SquareStore end
+
+	/**
+	 * Returns the chunk holding a square that is about to be written, 
+	 * 		first giving this store its own copy of the chunk if a copy of 
+	 * 		the store may still read the square.
+	 * @param i
+	 * 			index of the square being written
+	 * @return the chunk to write square i into
+	 */
+	Chunk writable(int i){
+
+		int c = i >>> CHUNK_SHIFT;
+		if(chunkEpochs[c] != epoch && i < sharedHigh){
+			chunks[c] = new Chunk(chunks[c], chunks[c].x.length);
+			chunkEpochs[c] = epoch;
+		}
+		return chunks[c];
+	}//writable end
+
+	/**
+	 * Makes room for a number of squares, growing the first chunk to its 
+	 * 		full size and adding full chunks after it.
+	 * @param capacity
+	 * 			number of squares the store must hold
+	 */
+	void reserve(int capacity){
+
+		if(chunkCount == 1 && chunks[0].x.length < Math.min(capacity, CHUNK_SQUARES)){
+			int grown = chunks[0].x.length * 2;
+			while(grown < capacity && grown < CHUNK_SQUARES){
+				grown *= 2;
+			}
+			chunks[0] = new Chunk(chunks[0], Math.min(grown, CHUNK_SQUARES));
+			chunkEpochs[0] = epoch;
+		}
+		while((long) chunkCount << CHUNK_SHIFT < capacity){
+			if(chunkCount == chunks.length){
+				chunks = Arrays.copyOf(chunks, Math.max(4, chunkCount * 2));
+				chunkEpochs = Arrays.copyOf(chunkEpochs, chunks.length);
+			}
+			chunks[chunkCount] = new Chunk(CHUNK_SQUARES, wide);
+			chunkEpochs[chunkCount++] = epoch;
+		}//while end
+	}//reserve end
+
+	/**
+	 * @param c
+	 * 			index of a chunk
+	 * @return the number of squares in the store held by chunk c
+	 */
+	private int used(int c){
+		return Math.min(size - (c << CHUNK_SHIFT), CHUNK_SQUARES);
+	}
+
+	/**
+	 * Appends a square to the store.
+	 * @param newX
+	 * 			canvas x location of the square
+	 * @param newY
+	 * 			canvas y location of the square
+	 * @param newWidth
+	 * 			width of the square
+	 * @param newHeight
+	 * 			height of the square
+	 * @param newArgb
+	 * 			packed ARGB color of the square
+	 * @return the index of the new square
+	 * @throws IllegalStateException
+	 * 			if the store is full
+	 */
+	public int add(int newX, int newY, int newWidth, int newHeight, int newArgb){
+
+		if(size == MAX_SQUARES){
+			throw new IllegalStateException("square store is full");
+		}
+		reserve(size + 1);
+		Chunk k = writable(size);
+		int j = size & CHUNK_MASK;
+		k.x[j] = newX - windowX;
+		k.y[j] = newY - windowY;
+		k.w[j] = newWidth;
+		k.h[j] = newHeight;
+		setColor(size, newArgb);
+		return size++;
+	}//add end
+
+	/**
+	 * Sets the color of a square, interning it in the palette. If the 
+	 * 		palette is full the squares move to the next generation first, 
+	 * 		and if even that cannot hold them the store stops using a 
+	 * 		palette.
+	 * @param i
+	 * 			index of the square, which may be size
+	 * @param newArgb
+	 * 			packed ARGB color of the square
+	 */
+	void setColor(int i, int newArgb){
+
+		if(!wide){
+			int index = palette.intern(newArgb);
+			if(index < 0 && rebase()){
+				index = palette.intern(newArgb);
+			}
+			if(index < 0){
+				widen();
+			}else{
+				writable(i).color[i & CHUNK_MASK] = (short) index;
+			}
+		}
+		if(wide){
+			writable(i).argb[i & CHUNK_MASK] = newArgb;
+		}
+	}//setColor end
+
+	/**
+	 * Moves the colors of the squares from a full palette to the next 
+	 * 		generation, which only gets the colors still in use. If other 
+	 * 		stores fill that generation first, one more is tried.
+	 * @return true if they fit, false if the store was left on its old 
+	 * 		palette
+	 */
+	boolean rebase(){
+
+		Palette next = palette;
+		short[][] moved = new short[chunkCount][];
+		for(int attempt = 0; attempt < 2; attempt++){
+			next = Palette.next(next);
+			boolean fits = true;
+			for(int c = 0; c < chunkCount && fits; c++){
+				short[] color = chunks[c].color;
+				moved[c] = new short[color.length];
+				for(int j = 0; j < used(c); j++){
+					int index = next.intern(palette.argb(color[j]));
+					if(index < 0){
+						fits = false; // next is full as well
+						break;
+					}
+					moved[c][j] = (short) index;
+				}//for loop end
+			}//for loop end
+			if(fits){
+				for(int c = 0; c < chunkCount; c++){
+					writable(c << CHUNK_SHIFT).color = moved[c];
+				}//for loop end
+				palette = next;
+				return true;
+			}
+		}//for loop end
+		return false;
+	}//rebase end
+
+	/**
+	 * Stops using the palette once this store alone has more colors than
+	 * 		it holds: every square gets its ARGB value in the argb array of 
+	 * 		its chunk, which then replaces the color array.
+	 */
+	void widen(){
+
+		for(int c = 0; c < chunkCount; c++){
+			Chunk k = writable(c << CHUNK_SHIFT);
+			k.argb = new int[k.x.length];
+			for(int j = 0; j < used(c); j++){
+				k.argb[j] = palette.argb(k.color[j]);
+			}//for loop end
+			k.color = null;
+		}//for loop end
+		wide = true;
+	}//widen end
+
+	/**
+	 * Removes a square by moving the last square into its place.
+	 * @param i
+	 * 			index of the square to be removed
+	 * @return the old index of the square that now sits at i, or -1 if
+	 * 		the removed square was the last one
+	 */
+	public int remove(int i){
+
+		int last = --size;
+		if(i == last){
+			return -1;
+		}
+		Chunk from = chunks[last >>> CHUNK_SHIFT];
+		Chunk to = writable(i);
+		int fromJ = last & CHUNK_MASK;
+		int toJ = i & CHUNK_MASK;
+		to.x[toJ] = from.x[fromJ];
+		to.y[toJ] = from.y[fromJ];
+		to.w[toJ] = from.w[fromJ];
+		to.h[toJ] = from.h[fromJ];
+		if(wide){
+			to.argb[toJ] = from.argb[fromJ];
+		}else{
+			to.color[toJ] = from.color[fromJ];
+		}
+		return last;
+	}//remove end
+
+	/**
+	 * @param i
+	 * 			index of a square
+	 * @param px
+	 * 			x coordinate of user click
+	 * @param py
+	 * 			y coordinate of user click
+	 * @return true if the user click is within square i, using the same
+	 * 		bounds as Square.isInside
+	 */
+	public boolean isInside(int i, int px, int py){
+		Chunk k = chunks[i >>> CHUNK_SHIFT];
+		int j = i & CHUNK_MASK;
+		px -= windowX;
+		py -= windowY;
+		return px >= k.x[j] - 10 && px <= k.x[j] + k.w[j] / 2 &&
+				py >= k.y[j] - 10 && py <= k.y[j] + k.h[j] / 2;
+	}//isInside end
+
+	/**
+	 * @param i
+	 * 			index of a square
+	 * @return the area painted by square i
+	 */
+	public Rectangle getBounds(int i){
+		Chunk k = chunks[i >>> CHUNK_SHIFT];
+		int j = i & CHUNK_MASK;
+		return new Rectangle(k.x[j] - 10 + windowX, k.y[j] - 10 + windowY, k.w[j], k.h[j]);
+	}//getBounds end
+
+	/**
+	 * Draws every square in the store that falls inside the clip of g.
+	 * @param g
+	 * 			Graphics object for drawing
+	 */
+	public void draw(Graphics g){
+		draw(g, null);
+	}//draw end
+
+	/**
+	 * Draws every square in the store that falls inside the clip of g and 
+	 * 		is not completely covered by one of the occluders.
+	 * @param g
+	 * 			Graphics object for drawing
+	 * @param occluders
+	 * 			opaque rectangles drawn over the squares later, may be null
+	 */
+	public void draw(Graphics g, ArrayList<Rectangle> occluders){
+
+		Rectangle clip = clipOf(g); // area being repainted
+		int drawn = 0; // squares drawn
+		for(int c = 0; c < chunkCount && c << CHUNK_SHIFT < size; c++){
+			Chunk k = chunks[c];
+			int end = used(c);
+			for(int j = 0; j < end; j++){
+				int left = k.x[j] - 10 + windowX;
+				int top = k.y[j] - 10 + windowY;
+				if(clip != null && (left >= clip.x + clip.width || top >= clip.y + clip.height 
+						|| left + k.w[j] <= clip.x || top + k.h[j] <= clip.y)){
+					continue; // square is outside the repainted area
+				}
+				if(occluders != null && isHidden(left, top, k.w[j], k.h[j], occluders)){
+					continue; // square is under a higher window
+				}
+				draw(g, k, j);
+				drawn++;
+			}
+		}//for loop end
+		if(WindowMetrics.ENABLED){
+			WindowMetrics.squaresDrawn.add(drawn);
+		}
+	}//draw end
+
+	/**
+	 * Reads the clip of g without the new Rectangle getClipBounds makes. 
+	 * 		Stores are drawn from several threads at once, so each thread 
+	 * 		has a rectangle of its own.
+	 * @param g
+	 * 			Graphics object being drawn with
+	 * @return the bounds of the clip of g, or VisibilityPass.NO_CLIP if 
+	 * 		it has none, in a rectangle reused by the next call on the 
+	 * 		same thread
+	 */
+	static Rectangle clipOf(Graphics g){
+		Rectangle clip = clips.get();
+		clip.setBounds(VisibilityPass.NO_CLIP);
+		return g.getClipBounds(clip); // left as it is if there is no clip
+	}//clipOf end
+
+	/**
+	 * @param left
+	 * 			x location of the left edge of the rectangle
+	 * @param top
+	 * 			y location of the top edge of the rectangle
+	 * @param width
+	 * 			width of the rectangle
+	 * @param height
+	 * 			height of the rectangle
+	 * @param occluders
+	 * 			opaque rectangles drawn over the squares later
+	 * @return true if one of the occluders contains the whole rectangle
+	 */
+	static boolean isHidden(int left, int top, int width, int height, 
+			ArrayList<Rectangle> occluders){
+		for(int j = 0; j < occluders.size(); j++){
+			if(occluders.get(j).contains(left, top, width, height)){
+				return true;
+			}
+		}//for loop end
+		return false;
+	}//isHidden end
+
+	/**
+	 * Draws one square in the Color colorOf gives for it.
+	 * @param g
+	 * 			Graphics object for drawing
+	 * @param i
+	 * 			index of the square
+	 */
+	public void draw(Graphics g, int i){
+		draw(g, chunks[i >>> CHUNK_SHIFT], i & CHUNK_MASK);
+	}//draw end
+
+	/**
+	 * Draws one square of a chunk.
+	 * @param g
+	 * 			Graphics object for drawing
+	 * @param k
+	 * 			chunk holding the square
+	 * @param j
+	 * 			index of the square in the chunk
+	 */
+	private void draw(Graphics g, Chunk k, int j){
+		g.setColor(colorOf(k, j));
+		g.fillRect(k.x[j] - 10 + windowX, k.y[j] - 10 + windowY, k.w[j], k.h[j]);
+	}//draw end
+
+	/**
+	 * @param k
+	 * 			chunk holding a square
+	 * @param j
+	 * 			index of the square in the chunk
+	 * @return the cached Color of the palette entry of the square, or once 
+	 * 		the store stopped using a palette a Color made when the color changes from 
+	 * 		one drawn square to the next
+	 */
+	private Color colorOf(Chunk k, int j){
+
+		if(!wide){
+			return palette.color(k.color[j]);
+		}
+		Color c = lastColor; // read once, see OffHeapSquareStore.colorOf
+		if(c == null || c.getRGB() != k.argb[j]){
+			c = new Color(k.argb[j], true);
+			lastColor = c;
+		}
+		return c;
+	}//colorOf end
+
+	/**
+	 * Fills every square that falls inside an area and is not completely 
+	 * 		covered by one of the occluders straight into the pixels of an 
+	 * 		opaque image, in the same order and with the same result as 
+	 * 		draw. Opaque squares are written as rows of ints with no 
+	 * 		Graphics call at all, translucent ones are blended through g.
+	 * @param g
+	 * 			Graphics object drawing into the same image
+	 * @param pixels
+	 * 			pixels of a TYPE_INT_RGB image, one int per pixel
+	 * @param scanWidth
+	 * 			width of the image
+	 * @param originX
+	 * 			canvas x location of the left column of the image
+	 * @param originY
+	 * 			canvas y location of the top row of the image
+	 * @param area
+	 * 			canvas area being drawn, or null for the whole image
+	 * @param occluders
+	 * 			opaque rectangles drawn over the squares later, may be null
+	 */
+	public void fill(Graphics g, int[] pixels, int scanWidth, int originX, 
+			int originY, Rectangle area, ArrayList<Rectangle> occluders){
+
+		Rectangle clip = clipToImage(pixels, scanWidth, originX, originY, area);
+		int drawn = 0; // squares drawn
+		for(int c = 0; c < chunkCount && c << CHUNK_SHIFT < size; c++){
+			Chunk k = chunks[c];
+			int end = used(c);
+			for(int j = 0; j < end; j++){
+				int left = k.x[j] - 10 + windowX;
+				int top = k.y[j] - 10 + windowY;
+				if(left >= clip.x + clip.width || top >= clip.y + clip.height 
+						|| left + k.w[j] <= clip.x || top + k.h[j] <= clip.y){
+					continue; // square is outside the area
+				}
+				if(occluders != null && isHidden(left, top, k.w[j], k.h[j], occluders)){
+					continue; // square is under a higher window
+				}
+				fill(g, pixels, scanWidth, originX, originY, clip, k, j);
+				drawn++;
+			}
+		}//for loop end
+		if(WindowMetrics.ENABLED){
+			WindowMetrics.squaresDrawn.add(drawn);
+		}
+	}//fill end
+
+	/**
+	 * Fills one square straight into the pixels of an opaque image.
+	 * @param g
+	 * 			Graphics object drawing into the same image, used for 
+	 * 				translucent squares
+	 * @param pixels
+	 * 			pixels of a TYPE_INT_RGB image, one int per pixel
+	 * @param scanWidth
+	 * 			width of the image
+	 * @param originX
+	 * 			canvas x location of the left column of the image
+	 * @param originY
+	 * 			canvas y location of the top row of the image
+	 * @param clip
+	 * 			canvas area that may be written, inside the image
+	 * @param i
+	 * 			index of the square
+	 */
+	public void fill(Graphics g, int[] pixels, int scanWidth, int originX, 
+			int originY, Rectangle clip, int i){
+		fill(g, pixels, scanWidth, originX, originY, clip, 
+				chunks[i >>> CHUNK_SHIFT], i & CHUNK_MASK);
+	}//fill end
+
+	/**
+	 * Fills one square of a chunk straight into the pixels of an opaque 
+	 * 		image, like fill for a store index.
+	 * @param g
+	 * 			Graphics object drawing into the same image, used for 
+	 * 				translucent squares
+	 * @param pixels
+	 * 			pixels of a TYPE_INT_RGB image, one int per pixel
+	 * @param scanWidth
+	 * 			width of the image
+	 * @param originX
+	 * 			canvas x location of the left column of the image
+	 * @param originY
+	 * 			canvas y location of the top row of the image
+	 * @param clip
+	 * 			canvas area that may be written, inside the image
+	 * @param k
+	 * 			chunk holding the square
+	 * @param j
+	 * 			index of the square in the chunk
+	 */
+	private void fill(Graphics g, int[] pixels, int scanWidth, int originX, 
+			int originY, Rectangle clip, Chunk k, int j){
+
+		int rgb = wide ? k.argb[j] : palette.argb(k.color[j]);
+		int left = Math.max(k.x[j] - 10 + windowX, clip.x);
+		int right = Math.min(k.x[j] - 10 + windowX + k.w[j], clip.x + clip.width);
+		int top = Math.max(k.y[j] - 10 + windowY, clip.y);
+		int bottom = Math.min(k.y[j] - 10 + windowY + k.h[j], clip.y + clip.height);
+		if(left >= right || top >= bottom){
+			return;
+		}
+		if((rgb >>> 24) != 0xFF){
+			// needs blending, so goes through g, clipped here so g needs 
+			//		no clip of its own
+			g.setColor(colorOf(k, j));
+			g.fillRect(left, top, right - left, bottom - top);
+			return;
+		}
+		for(int row = top; row < bottom; row++){
+			int start = (row - originY) * scanWidth + left - originX;
+			Arrays.fill(pixels, start, start + right - left, rgb);
+		}//for loop end
+	}//fill end
+
+	/**
+	 * @param pixels
+	 * 			pixels of an image, one int per pixel
+	 * @param scanWidth
+	 * 			width of the image
+	 * @param originX
+	 * 			canvas x location of the left column of the image
+	 * @param originY
+	 * 			canvas y location of the top row of the image
+	 * @param area
+	 * 			canvas area being drawn, or null for the whole image
+	 * @return the part of area that lies on the image, in canvas 
+	 * 		coordinates
+	 */
+	static Rectangle clipToImage(int[] pixels, int scanWidth, int originX, 
+			int originY, Rectangle area){
+		return clipToImage(pixels, scanWidth, originX, originY, area, new Rectangle());
+	}//clipToImage end
+
+	/**
+	 * Same as clipToImage, but stores the result in a given rectangle.
+	 * @param pixels
+	 * 			pixels of an image, one int per pixel
+	 * @param scanWidth
+	 * 			width of the image
+	 * @param originX
+	 * 			canvas x location of the left column of the image
+	 * @param originY
+	 * 			canvas y location of the top row of the image
+	 * @param area
+	 * 			canvas area being drawn, or null for the whole image
+	 * @param into
+	 * 			rectangle the result is stored in
+	 * @return into
+	 */
+	static Rectangle clipToImage(int[] pixels, int scanWidth, int originX, 
+			int originY, Rectangle area, Rectangle into){
+
+		int left = originX;
+		int top = originY;
+		int right = originX + scanWidth;
+		int bottom = originY + pixels.length / scanWidth;
+		if(area != null){
+			left = Math.max(left, area.x);
+			top = Math.max(top, area.y);
+			right = Math.min(right, area.x + area.width);
+			bottom = Math.min(bottom, area.y + area.height);
+		}
+		into.setBounds(left, top, Math.max(right - left, 0), Math.max(bottom - top, 0));
+		return into;
+	}//clipToImage end
+
+	/**
+	 * @param width
+	 * 			width of the window
+	 * @param height
+	 * 			height of the window
+	 * @return true if every square lies inside a window of the given 
+	 * 		size, so drawing them needs no clipping
+	 */
+	public boolean fitsIn(int width, int height){
+
+		for(int c = 0; c < chunkCount && c << CHUNK_SHIFT < size; c++){
+			Chunk k = chunks[c];
+			int end = used(c);
+			for(int j = 0; j < end; j++){
+				if(k.x[j] - 10 < 0 || k.y[j] - 10 < 0 || k.x[j] - 10 + k.w[j] > width 
+						|| k.y[j] - 10 + k.h[j] > height){
+					return false;
+				}
+			}
+		}//for loop end
+		return true;
+	}//fitsIn end
+
+	/**
+	 * @return a new store sharing the chunks of this one, copy-on-write: 
+	 * 		whichever store writes a shared chunk first copies it, so a 
+	 * 		copy costs one array of chunk references
+	 */
+	public SquareStore copy(){
+		return movedTo(windowX, windowY);
+	}//copy end
+
+	/**
+	 * Makes a store for a copy of a window that was moved. Like copy, 
+	 * 		the chunks are shared until either store writes to them.
+	 * @param newWindowX
+	 * 			canvas x location of the moved window
+	 * @param newWindowY
+	 * 			canvas y location of the moved window
+	 * @return a store holding the same squares relative to the new location
+	 */
+	public SquareStore movedTo(int newWindowX, int newWindowY){
+
+		epoch++;
+		sharedHigh = Math.max(sharedHigh, size);
+		return new SquareStore(this, newWindowX, newWindowY);
+	}//movedTo end
+
+	/**
+	 * Writes the squares a column at a time, the layout SceneFile saves: 
+	 * 		every x, then every y, every width, every height and every 
+	 * 		ARGB color. The location and size columns are bulk copies out 
+	 * 		of each chunk.
+	 * @param columns
+	 * 			buffer written from its position, with room for five ints 
+	 * 				per square
+	 */
+	void putColumns(IntBuffer columns){
+
+		for(int column = 0; column < 4; column++){
+			for(int c = 0; c < chunkCount && c << CHUNK_SHIFT < size; c++){
+				columns.put(column(chunks[c], column), 0, used(c));
+			}//for loop end
+		}//for loop end
+		for(int c = 0; c < chunkCount && c << CHUNK_SHIFT < size; c++){
+			Chunk k = chunks[c];
+			if(wide){
+				columns.put(k.argb, 0, used(c));
+			}else{
+				for(int j = 0; j < used(c); j++){
+					columns.put(palette.argb(k.color[j]));
+				}//for loop end
+			}
+		}//for loop end
+	}//putColumns end
+
+	/**
+	 * Appends squares read a column at a time, in the layout putColumns 
+	 * 		writes, to an empty store.
+	 * @param columns
+	 * 			buffer read from its position
+	 * @param n
+	 * 			number of squares
+	 * @param offsetX
+	 * 			amount taken off every x location, to make canvas 
+	 * 				locations relative to the window
+	 * @param offsetY
+	 * 			amount taken off every y location
+	 */
+	void getColumns(IntBuffer columns, int n, int offsetX, int offsetY){
+
+		reserve(n);
+		int chunksUsed = (n + CHUNK_MASK) >>> CHUNK_SHIFT;
+		for(int column = 0; column < 4; column++){
+			for(int c = 0; c < chunksUsed; c++){
+				columns.get(column(chunks[c], column), 0, 
+						Math.min(n - (c << CHUNK_SHIFT), CHUNK_SQUARES));
+			}//for loop end
+		}//for loop end
+		if(offsetX != 0 || offsetY != 0){
+			for(int c = 0; c < chunksUsed; c++){
+				Chunk k = chunks[c];
+				for(int j = Math.min(n - (c << CHUNK_SHIFT), CHUNK_SQUARES) - 1; j >= 0; j--){
+					k.x[j] -= offsetX;
+					k.y[j] -= offsetY;
+				}
+			}//for loop end
+		}
+		for(; size < n; size++){ // squares before size have colors, for rebase and widen
+			setColor(size, columns.get());
+		}//for loop end
+	}//getColumns end
+
+	/**
+	 * @param k
+	 * 			chunk of squares
+	 * @param column
+	 * 			0 to 3 for x, y, width and height
+	 * @return the array of the chunk holding that column
+	 */
+	private static int[] column(Chunk k, int column){
+		switch(column){
+			case 0: return k.x;
+			case 1: return k.y;
+			case 2: return k.w;
+			default: return k.h;
+		}
+	}//column end
+
+	/**
+	 * Moves every square along with its window.
+	 * @param newWindowX
+	 * 			new canvas x location of the window
+	 * @param newWindowY
+	 * 			new canvas y location of the window
+	 */
+	public void moveTo(int newWindowX, int newWindowY){
+		windowX = newWindowX;
+		windowY = newWindowY;
+	}//moveTo end
+
+	/**
+	 * @return the number of squares in the store
+	 */
+	public int size(){
+		return size;
+	}
+
+	// single values, for code that works with any SquareStorage
+
+	public int getX(int i){
+		return chunks[i >>> CHUNK_SHIFT].x[i & CHUNK_MASK];
+	}
+
+	public int getY(int i){
+		return chunks[i >>> CHUNK_SHIFT].y[i & CHUNK_MASK];
+	}
+
+	public int getWidth(int i){
+		return chunks[i >>> CHUNK_SHIFT].w[i & CHUNK_MASK];
+	}
+
+	public int getHeight(int i){
+		return chunks[i >>> CHUNK_SHIFT].h[i & CHUNK_MASK];
+	}
+
+	public int getArgb(int i){
+		Chunk k = chunks[i >>> CHUNK_SHIFT];
+		return wide ? k.argb[i & CHUNK_MASK] : palette.argb(k.color[i & CHUNK_MASK]);
+	}
+
+	public int getWindowX(){
+		return windowX;
+	}
+
+	public int getWindowY(){
+		return windowY;
+	}
+}//SquareStore end
@@ -0,0 +1,165 @@
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Renders a whole scene into an image by splitting it into square tiles
+ * 		and drawing the tiles in parallel on a fork-join pool. Each tile
+ * 		runs its own VisibilityPass, so it only draws the windows and
+ * 		squares that reach it, into a small image of its own that is then
+ * 		copied into place. Squares are filled straight into the pixels of
+ * 		the tile.
+ *
+ * Tiles draw with Windows.render, the same calls the sequential path
+ * 		makes, moved by a whole number of pixels, so the result is pixel
+ * 		for pixel what MainWindows.draw gives. The cached surfaces are not
+ * 		used because building them is not safe from several threads. The
+ * 		scene must not change while it is being rendered.
+ * @author Grady Barrett
+ */
+public class TiledRenderer {
+
+	static final int DEFAULT_TILE = 128; // width and height of a tile
+
+	ForkJoinPool pool; // pool drawing the tiles
+	int tileSize; // width and height of a tile
+
+	/**
+	 * Constructor for a renderer on the common fork-join pool.
+	 */
+	public TiledRenderer(){
+		this(ForkJoinPool.commonPool(), DEFAULT_TILE);
+	}//TiledRenderer end
+
+	/**
+	 * Constructor for a renderer.
+	 * @param newPool
+	 * 			pool drawing the tiles
+	 * @param newTileSize
+	 * 			width and height of a tile
+	 */
+	public TiledRenderer(ForkJoinPool newPool, int newTileSize){
+		pool = newPool;
+		tileSize = newTileSize;
+	}//TiledRenderer end
+
+	/**
+	 * Renders a scene at the size of the GUI canvas.
+	 * @param scene
+	 * 			scene to be drawn
+	 * @return a new image of the scene on a white background
+	 */
+	public BufferedImage render(MainWindows scene){
+		return render(scene, SimpleWindowsGUI.CANVAS_WIDTH, SimpleWindowsGUI.CANVAS_HEIGHT);
+	}//render end
+
+	/**
+	 * Renders a scene into a new image of any size.
+	 * @param scene
+	 * 			scene to be drawn
+	 * @param width
+	 * 			width of the image
+	 * @param height
+	 * 			height of the image
+	 * @return a new image of the scene on a white background
+	 */
+	public BufferedImage render(MainWindows scene, int width, int height){
+
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		render(scene, image);
+		return image;
+	}//render end
+
+	/**
+	 * Renders a scene over the whole of an image.
+	 * @param scene
+	 * 			scene to be drawn
+	 * @param image
+	 * 			TYPE_INT_RGB image receiving the scene
+	 */
+	public void render(MainWindows scene, BufferedImage image){
+
+		int cols = (image.getWidth() + tileSize - 1) / tileSize;
+		int rows = (image.getHeight() + tileSize - 1) / tileSize;
+		int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+		pool.invoke(new Tiles(scene, image.getWidth(), image.getHeight(), pixels,
+				cols, 0, cols * rows));
+	}//render end
+
+	/**
+	 * Task drawing a range of tiles, split in half until it is a single
+	 * 		tile.
+	 */
+	class Tiles extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L; // tasks are never serialized
+
+		MainWindows scene; // scene being drawn
+		int width; // width of the whole image
+		int height; // height of the whole image
+		int[] pixels; // pixels of the whole image, one int per pixel
+		int cols; // tiles across the image
+		int first; // first tile in the range, numbered across then down
+		int end; // tile after the last one in the range
+
+		/**
+		 * Constructor for a range of tiles.
+		 */
+		Tiles(MainWindows newScene, int newWidth, int newHeight, int[] newPixels,
+				int newCols, int newFirst, int newEnd){
+			scene = newScene;
+			width = newWidth;
+			height = newHeight;
+			pixels = newPixels;
+			cols = newCols;
+			first = newFirst;
+			end = newEnd;
+		}//Tiles end
+
+		/**
+		 * Draws the tile, or splits the range in two.
+		 */
+		protected void compute(){
+
+			if(end - first > 1){
+				int middle = (first + end) >>> 1;
+				invokeAll(new Tiles(scene, width, height, pixels, cols, first, middle),
+						new Tiles(scene, width, height, pixels, cols, middle, end));
+				return;
+			}
+			int tileX = (first % cols) * tileSize;
+			int tileY = (first / cols) * tileSize;
+			Rectangle area = new Rectangle(tileX, tileY, Math.min(tileSize, width - tileX),
+					Math.min(tileSize, height - tileY));
+
+			BufferedImage tile = new BufferedImage(area.width, area.height,
+					BufferedImage.TYPE_INT_RGB);
+			int[] tilePixels = ((DataBufferInt) tile.getRaster().getDataBuffer()).getData();
+			Graphics2D g = tile.createGraphics();
+			g.translate(-area.x, -area.y);
+			g.setClip(area);
+			g.setColor(Color.white);
+			g.fillRect(area.x, area.y, area.width, area.height);
+
+			// same back to front order and culling as MainWindows.draw
+			VisibilityPass pass = new VisibilityPass(scene.windows, area);
+			Windows top = scene.windows.top();
+			for(int i = 0; i < pass.visible.size(); i++){
+				Windows w = pass.visible.get(i);
+				w.render(g, w == top, pass.occluders.get(i), tilePixels, area.width,
+						area.x, area.y);
+			}//for loop end
+			g.dispose();
+
+			// tiles cover different pixels, so the copies never overlap
+			for(int row = 0; row < area.height; row++){
+				System.arraycopy(tilePixels, row * area.width, pixels,
+						(area.y + row) * width + area.x, area.width);
+			}//for loop end
+		}//compute end
+	}//Tiles end
+}//TiledRenderer end
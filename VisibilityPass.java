@@ -0,0 +1,321 @@
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Collections;
+
+/**
+ * Front to back visibility pass over a window stack. Windows whose 
+ * 		painted area is completely covered by the opaque area of the 
+ * 		windows above them are dropped, and each window that is kept gets 
+ * 		the opaque rectangles of the windows above it that overlap it, so 
+ * 		squares hidden under one of them can be skipped as well.
+ *
+ * The part of the clip not yet covered is kept as a set of disjoint 
+ * 		rectangles, and each opaque window cuts the pieces it overlaps 
+ * 		into the at most four pieces left around it. A window is hidden 
+ * 		when its painted area meets none of the pieces, and the pass ends 
+ * 		once there are none left. A pass can be run again and again, and 
+ * 		reuses its lists and rectangles, so once they have grown to the 
+ * 		size of the scene a pass allocates nothing.
+ * @author Grady Barrett
+ */
+public class VisibilityPass {
+
+	// canvas area used as the clip when there is none
+	static final Rectangle NO_CLIP = new Rectangle(-(1 << 28), -(1 << 28), 
+			1 << 29, 1 << 29);
+
+	// windows that are at least partly visible, from back to front
+	ArrayList<Windows> visible = new ArrayList<Windows>();
+	
+	// same for a pass over a snapshot
+	ArrayList<SceneSnapshot.WindowView> visibleViews = new ArrayList<SceneSnapshot.WindowView>();
+	
+	// for each visible window, the opaque rectangles of higher windows 
+	//		that overlap it; the lists are reused by the next run
+	ArrayList<ArrayList<Rectangle>> occluders = new ArrayList<ArrayList<Rectangle>>();
+	
+	// opaque bounds of the visible windows visited so far
+	private ArrayList<Rectangle> above = new ArrayList<Rectangle>();
+	
+	// every rectangle and list the pass has made, for reuse
+	private ArrayList<Rectangle> rects = new ArrayList<Rectangle>();
+	private ArrayList<ArrayList<Rectangle>> lists = new ArrayList<ArrayList<Rectangle>>();
+	private int rectsUsed = 0; // rects handed out in this run
+	private int listsUsed = 0; // lists handed out in this run
+	
+	// disjoint pieces of the clip not yet covered, the first pieceCount 
+	//		are in use
+	private Rectangle[] pieces = new Rectangle[16];
+	private int pieceCount = 0;
+	
+	private Rectangle clipBounds = new Rectangle(); // filled by clipOf
+
+	/**
+	 * Constructor for a pass that is run later.
+	 */
+	public VisibilityPass(){
+	}//VisibilityPass end
+
+	/**
+	 * Constructor that runs the pass.
+	 * @param windows
+	 * 			windows to be checked
+	 * @param clip
+	 * 			area being drawn, or null for no limit
+	 */
+	public VisibilityPass(WindowStack windows, Rectangle clip){
+		run(windows, clip);
+	}//VisibilityPass end
+
+	/**
+	 * Constructor that runs the pass over the windows of a snapshot.
+	 * @param views
+	 * 			copies of the windows to be checked, from back to front
+	 * @param clip
+	 * 			area being drawn, or null for no limit
+	 */
+	public VisibilityPass(SceneSnapshot.WindowView[] views, Rectangle clip){
+		run(views, clip);
+	}//VisibilityPass end
+
+	/**
+	 * Runs the pass, replacing the result of the last run.
+	 * @param windows
+	 * 			windows to be checked
+	 * @param clip
+	 * 			area being drawn, or null for no limit
+	 */
+	public void run(WindowStack windows, Rectangle clip){
+
+		start(clip);
+		// walks from the front window toward the back
+		for(Windows w = windows.top(); w != null && pieceCount > 0; w = w.below){
+			ArrayList<Rectangle> over = visit(w.winUpperLeftX, w.winUpperLeftY, 
+					w.winWidth, w.winHeight);
+			if(over != null){
+				visible.add(w);
+				occluders.add(over);
+			}
+		}//for loop end
+
+		// the pass ran front to back, drawing goes back to front
+		Collections.reverse(visible);
+		Collections.reverse(occluders);
+	}//run end
+
+	/**
+	 * Runs the pass over the windows of a snapshot, replacing the result 
+	 * 		of the last run.
+	 * @param views
+	 * 			copies of the windows to be checked, from back to front
+	 * @param clip
+	 * 			area being drawn, or null for no limit
+	 */
+	public void run(SceneSnapshot.WindowView[] views, Rectangle clip){
+
+		start(clip);
+		for(int i = views.length - 1; i >= 0 && pieceCount > 0; i--){
+			SceneSnapshot.WindowView v = views[i];
+			ArrayList<Rectangle> over = visit(v.x, v.y, v.width, v.height);
+			if(over != null){
+				visibleViews.add(v);
+				occluders.add(over);
+			}
+		}//for loop end
+
+		Collections.reverse(visibleViews);
+		Collections.reverse(occluders);
+	}//run end
+
+	/**
+	 * Reads the clip of g without the new Rectangle getClipBounds makes.
+	 * @param g
+	 * 			Graphics object being drawn with
+	 * @return the bounds of the clip of g, or NO_CLIP if it has none, in 
+	 * 		a rectangle the pass reuses
+	 */
+	public Rectangle clipOf(Graphics g){
+		clipBounds.setBounds(NO_CLIP);
+		return g.getClipBounds(clipBounds); // left as it is if there is no clip
+	}//clipOf end
+
+	/**
+	 * Forgets the last run and starts with the whole clip uncovered.
+	 * @param clip
+	 * 			area being drawn, or null for no limit
+	 */
+	private void start(Rectangle clip){
+
+		visible.clear();
+		visibleViews.clear();
+		occluders.clear();
+		above.clear();
+		rectsUsed = 0;
+		listsUsed = 0;
+		pieceCount = 0;
+		Rectangle area = clip == null ? NO_CLIP : clip;
+		if(!area.isEmpty()){
+			addPiece(area.x, area.y, area.width, area.height);
+		}
+	}//start end
+
+	/**
+	 * Checks one window against the windows visited before it, and if it 
+	 * 		is visible takes its opaque area out of the uncovered pieces.
+	 * @param x
+	 * 			window upper left x location
+	 * @param y
+	 * 			window upper left y location
+	 * @param width
+	 * 			window width
+	 * @param height
+	 * 			window height
+	 * @return the opaque rectangles of the windows above that overlap the 
+	 * 		window, or null if the window need not be drawn
+	 */
+	private ArrayList<Rectangle> visit(int x, int y, int width, int height){
+
+		// area painted by the window, as in Windows.getBounds
+		int left = x;
+		int top = y - 3;
+		int right = x + width + 8;
+		int bottom = y + height + 3;
+
+		boolean shows = false;
+		for(int i = 0; i < pieceCount && !shows; i++){
+			shows = overlaps(pieces[i], left, top, right, bottom);
+		}//for loop end
+		if(!shows){
+			return null; // window is hidden or outside the area being drawn
+		}
+
+		ArrayList<Rectangle> over = nextList();
+		for(int i = 0; i < above.size(); i++){
+			if(overlaps(above.get(i), left, top, right, bottom)){
+				over.add(above.get(i));
+			}
+		}//for loop end
+
+		// opaque area of the window, as in Windows.getOpaqueBounds
+		Rectangle opaque = nextRect();
+		opaque.setBounds(x, y, width + 1, height + 1);
+		above.add(opaque);
+		cut(x, y, x + width + 1, y + height + 1);
+		return over;
+	}//visit end
+
+	/**
+	 * Takes an opaque area out of the uncovered pieces.
+	 * @param left
+	 * 			left edge of the area
+	 * @param top
+	 * 			top edge of the area
+	 * @param right
+	 * 			right edge of the area, exclusive
+	 * @param bottom
+	 * 			bottom edge of the area, exclusive
+	 */
+	private void cut(int left, int top, int right, int bottom){
+
+		// walks down so the pieces added at the end, which lie outside 
+		//		the area, are not visited
+		for(int i = pieceCount - 1; i >= 0; i--){
+			Rectangle p = pieces[i];
+			if(!overlaps(p, left, top, right, bottom)){
+				continue;
+			}
+			int pLeft = p.x;
+			int pTop = p.y;
+			int pRight = p.x + p.width;
+			int pBottom = p.y + p.height;
+
+			// the piece at the end takes its place, and the rectangle is 
+			//		reused for the parts left around the area
+			pieces[i] = pieces[pieceCount - 1];
+			pieces[pieceCount - 1] = p;
+			pieceCount--;
+
+			int midTop = Math.max(pTop, top);
+			int midBottom = Math.min(pBottom, bottom);
+			if(pTop < top){
+				addPiece(pLeft, pTop, pRight - pLeft, top - pTop);
+			}
+			if(pBottom > bottom){
+				addPiece(pLeft, bottom, pRight - pLeft, pBottom - bottom);
+			}
+			if(pLeft < left){
+				addPiece(pLeft, midTop, left - pLeft, midBottom - midTop);
+			}
+			if(pRight > right){
+				addPiece(right, midTop, pRight - right, midBottom - midTop);
+			}
+		}//for loop end
+	}//cut end
+
+	/**
+	 * Adds an uncovered piece, reusing a rectangle left past the end of 
+	 * 		the pieces in use.
+	 * @param x
+	 * 			x location of the piece
+	 * @param y
+	 * 			y location of the piece
+	 * @param width
+	 * 			width of the piece
+	 * @param height
+	 * 			height of the piece
+	 */
+	private void addPiece(int x, int y, int width, int height){
+
+		if(pieceCount == pieces.length){
+			Rectangle[] grown = new Rectangle[pieces.length * 2];
+			System.arraycopy(pieces, 0, grown, 0, pieces.length);
+			pieces = grown;
+		}
+		if(pieces[pieceCount] == null){
+			pieces[pieceCount] = new Rectangle();
+		}
+		pieces[pieceCount++].setBounds(x, y, width, height);
+	}//addPiece end
+
+	/**
+	 * @return a rectangle that is not in use in this run
+	 */
+	private Rectangle nextRect(){
+		if(rectsUsed == rects.size()){
+			rects.add(new Rectangle());
+		}
+		return rects.get(rectsUsed++);
+	}//nextRect end
+
+	/**
+	 * @return an empty list that is not in use in this run
+	 */
+	private ArrayList<Rectangle> nextList(){
+		if(listsUsed == lists.size()){
+			lists.add(new ArrayList<Rectangle>());
+		}
+		ArrayList<Rectangle> list = lists.get(listsUsed++);
+		list.clear();
+		return list;
+	}//nextList end
+
+	/**
+	 * @param r
+	 * 			rectangle to be checked
+	 * @param left
+	 * 			left edge of the area
+	 * @param top
+	 * 			top edge of the area
+	 * @param right
+	 * 			right edge of the area, exclusive
+	 * @param bottom
+	 * 			bottom edge of the area, exclusive
+	 * @return true if r and the area share at least one pixel
+	 */
+	private static boolean overlaps(Rectangle r, int left, int top, int right, 
+			int bottom){
+		return r.x < right && r.y < bottom && r.x + r.width > left 
+				&& r.y + r.height > top;
+	}//overlaps end
+}//VisibilityPass end
@@ -0,0 +1,616 @@
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Micro benchmarks for the list, hit-testing and drawing code, run the 
+ * 		way JMH runs them. Each group of benchmarks is run for each 
+ * 		requested size in a fresh JVM, so the list classes and the window 
+ * 		code do not share one JIT profile, and in every fork each 
+ * 		benchmark is warmed up and then timed over several iterations. 
+ * 		The value of every operation goes into a Blackhole so the JIT 
+ * 		cannot drop the work.
+ *
+ * The results are written as a JSON array in the layout JMH writes with
+ * 		-rf json, one entry per benchmark and size with the mean time per
+ * 		operation over all iterations of all forks, its error at 99.9%
+ * 		confidence, and the bytes allocated per operation, so runs can be 
+ * 		compared across versions with the same tools.
+ *
+ * Usage: java WindowBenchmark [-o results.json] [-f forks] [-i iterations]
+ * 		[-t millis per iteration] [size ...]
+ * @author Grady Barrett
+ */
+public class WindowBenchmark {
+
+	// groups of benchmarks that share a JVM, in the order they are run
+	static final String[] GROUPS = { "KWLinkedList", "LinkedList", "ArrayList",
+			"IntLinkedList", "window", "square" };
+	static final String CHILD = "-child"; // marks a forked JVM, followed by its group
+
+	static long measureMillis = 500; // time spent measuring each iteration
+	static int iterations = 5; // measured iterations per fork
+	static Blackhole blackhole = new Blackhole(); // takes the value of every operation
+	static PrintStream raw = System.out; // where one line per iteration goes
+
+	/**
+	 * A benchmark body, run once per operation.
+	 */
+	interface Op {
+		/**
+		 * @param i
+		 * 			number of the operation, for picking inputs
+		 * @return any value that depends on the work done
+		 */
+		long run(int i);
+	}
+
+	/**
+	 * Sink for the values of operations, like the JMH Blackhole. A value 
+	 * 		is compared with two volatile fields that are never equal to 
+	 * 		each other, which the JIT cannot see through, so the work that 
+	 * 		made the value has to be done.
+	 */
+	static class Blackhole {
+
+		volatile long l1 = 1; // never equal to l2
+		volatile long l2 = 2;
+		Blackhole escaped; // only set if a value matched both fields
+
+		/**
+		 * @param value
+		 * 			value to be consumed
+		 */
+		void consume(long value){
+			if(value == l1 & value == l2){
+				escaped = this; // never reached
+			}
+		}
+	}//Blackhole end
+
+	/**
+	 * Runs every benchmark and writes the results. In a forked JVM only 
+	 * 		runs one group for one size and prints one line per iteration.
+	 * @param args
+	 * 			see the class comment
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException {
+
+		String outFile = null; // results go to standard out if null
+		String childGroup = null; // group to run if this is a forked JVM
+		int forks = 2;
+		List<Integer> sizes = new ArrayList<Integer>();
+		for(int i = 0; i < args.length; i++){
+			if(args[i].equals("-o")){
+				outFile = args[++i];
+			}else if(args[i].equals("-f")){
+				forks = Integer.parseInt(args[++i]);
+			}else if(args[i].equals("-i")){
+				iterations = Integer.parseInt(args[++i]);
+			}else if(args[i].equals("-t")){
+				measureMillis = Long.parseLong(args[++i]);
+			}else if(args[i].equals(CHILD)){
+				childGroup = args[++i];
+			}else{
+				sizes.add(Integer.parseInt(args[i]));
+			}
+		}//for loop end
+		if(sizes.isEmpty()){
+			sizes.add(10);
+			sizes.add(100);
+			sizes.add(1000);
+			sizes.add(10000);
+			sizes.add(100000);
+		}
+
+		if(childGroup != null){
+			for(int n : sizes){
+				runGroup(childGroup, n);
+			}
+			return;
+		}
+
+		// iteration lines of every fork, "name size nsPerOp bytesPerOp"
+		List<String> lines = new ArrayList<String>();
+		for(int n : sizes){
+			for(String group : GROUPS){
+				if(forks == 0){
+					// in this JVM, for debugging the benchmarks themselves
+					ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+					raw = new PrintStream(bytes, true);
+					runGroup(group, n);
+					raw = System.out;
+					lines.addAll(Arrays.asList(bytes.toString().split("\n")));
+				}
+				for(int f = 0; f < forks; f++){
+					lines.addAll(fork(group, n));
+				}
+			}//for loop end
+		}//for loop end
+
+		PrintWriter out = outFile == null ? new PrintWriter(System.out)
+				: new PrintWriter(new FileWriter(outFile));
+		writeJson(out, lines, Math.max(forks, 1));
+		out.flush();
+		if(outFile != null){
+			out.close();
+		}
+	}//main end
+
+	/**
+	 * Runs one group of benchmarks for one size in a new JVM with the same
+	 * 		class path and JVM options as this one.
+	 * @param group
+	 * 			name of the group, one of GROUPS
+	 * @param n
+	 * 			size parameter
+	 * @return the iteration lines the fork printed
+	 */
+	static List<String> fork(String group, int n) throws IOException, InterruptedException {
+
+		List<String> command = new ArrayList<String>();
+		command.add(System.getProperty("java.home") + File.separator + "bin"
+				+ File.separator + "java");
+		command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add("WindowBenchmark");
+		command.add(CHILD);
+		command.add(group);
+		command.add("-i");
+		command.add(Integer.toString(iterations));
+		command.add("-t");
+		command.add(Long.toString(measureMillis));
+		command.add(Integer.toString(n));
+
+		// progress goes straight to our standard error
+		Process child = new ProcessBuilder(command)
+				.redirectError(ProcessBuilder.Redirect.INHERIT).start();
+		List<String> lines = new ArrayList<String>();
+		BufferedReader in = new BufferedReader(new InputStreamReader(child.getInputStream()));
+		for(String line = in.readLine(); line != null; line = in.readLine()){
+			lines.add(line);
+		}
+		in.close();
+		if(child.waitFor() != 0){
+			throw new IOException("fork for " + group + " at size " + n + " failed");
+		}
+		return lines;
+	}//fork end
+
+	/**
+	 * Runs one group of benchmarks.
+	 * @param group
+	 * 			name of the group, one of GROUPS
+	 * @param n
+	 * 			size parameter
+	 */
+	static void runGroup(String group, int n){
+
+		if(group.equals("KWLinkedList")){
+			listBenchmarks(group, new KWLinkedList<Integer>(), n);
+		}else if(group.equals("LinkedList")){
+			listBenchmarks(group, new LinkedList<Integer>(), n);
+		}else if(group.equals("ArrayList")){
+			listBenchmarks(group, new ArrayList<Integer>(), n);
+		}else if(group.equals("IntLinkedList")){
+			intListBenchmarks(n);
+		}else if(group.equals("window")){
+			windowBenchmarks(n);
+		}else if(group.equals("square")){
+			squareBenchmarks(n);
+		}else{
+			throw new IllegalArgumentException("no benchmark group " + group);
+		}
+	}//runGroup end
+
+	/**
+	 * Writes one JSON entry per benchmark and size in the layout of JMH, 
+	 * 		averaging every iteration of every fork.
+	 * @param out
+	 * 			where the JSON goes
+	 * @param lines
+	 * 			iteration lines, "name size nsPerOp bytesPerOp"
+	 * @param forks
+	 * 			number of forks each benchmark ran in
+	 */
+	static void writeJson(PrintWriter out, List<String> lines, int forks){
+
+		// iterations of each benchmark and size, in the order first seen
+		Map<String, List<double[]>> runs = new LinkedHashMap<String, List<double[]>>();
+		for(String line : lines){
+			String[] parts = line.trim().split(" ");
+			if(parts.length != 4){
+				continue;
+			}
+			String key = parts[0] + " " + parts[1];
+			if(!runs.containsKey(key)){
+				runs.put(key, new ArrayList<double[]>());
+			}
+			runs.get(key).add(new double[]{ Double.parseDouble(parts[2]),
+					Double.parseDouble(parts[3]) });
+		}//for loop end
+
+		out.println("[");
+		int k = 0;
+		for(Map.Entry<String, List<double[]>> e : runs.entrySet()){
+			String[] key = e.getKey().split(" ");
+			List<double[]> its = e.getValue();
+			double time = 0;
+			double bytes = 0;
+			for(double[] it : its){
+				time += it[0];
+				bytes += it[1];
+			}
+			time /= its.size();
+			bytes /= its.size();
+			double variance = 0;
+			for(double[] it : its){
+				variance += (it[0] - time) * (it[0] - time);
+			}
+			// 99.9% confidence from the normal distribution, as JMH 
+			//		reports with enough iterations
+			double error = its.size() < 2 ? Double.NaN
+					: 3.29 * Math.sqrt(variance / (its.size() - 1) / its.size());
+
+			out.print(String.format("  {\"benchmark\": \"%s\", \"mode\": \"avgt\", "
+					+ "\"forks\": %d, \"measurementIterations\": %d, "
+					+ "\"params\": {\"size\": \"%s\"}, "
+					+ "\"primaryMetric\": {\"score\": %.3f, \"scoreError\": %s, "
+					+ "\"scoreUnit\": \"ns/op\"}, "
+					+ "\"secondaryMetrics\": {\"gc.alloc.rate.norm\": "
+					+ "{\"score\": %.3f, \"scoreUnit\": \"B/op\"}}}",
+					key[0], forks, its.size() / forks, key[1], time,
+					Double.isNaN(error) ? "\"NaN\"" : String.format("%.3f", error), bytes));
+			out.println(++k < runs.size() ? "," : "");
+		}//for loop end
+		out.println("]");
+	}//writeJson end
+
+	/**
+	 * Times append, sequential get, iteration, forEach, removeIf with addAll
+	 * 		and insert/remove through an iterator on a list holding n items.
+	 * @param name
+	 * 			name of the list class, used in the results
+	 * @param list
+	 * 			empty list to be filled
+	 * @param n
+	 * 			number of items
+	 */
+	static void listBenchmarks(String name, final List<Integer> list, final int n){
+
+		for(int i = 0; i < n; i++){
+			list.add(i);
+		}
+		run("list.addRemoveTail." + name, n, new Op(){
+			public long run(int i){
+				list.add(i);
+				return list.remove(list.size() - 1);
+			}
+		});
+		run("list.getSequential." + name, n, new Op(){
+			public long run(int i){
+				return list.get(i % n);
+			}
+		});
+		run("list.iterate." + name, n, new Op(){
+			public long run(int i){
+				long sum = 0;
+				for(int v : list){
+					sum += v;
+				}
+				return sum;
+			}
+		});
+		final long[] total = new long[1];
+		final Consumer<Integer> adder = new Consumer<Integer>(){
+			public void accept(Integer v){
+				total[0] += v;
+			}
+		};
+		run("list.forEach." + name, n, new Op(){
+			public long run(int i){
+				list.forEach(adder);
+				return total[0];
+			}
+		});
+		run("list.removeIfAddAll." + name, n, new Op(){
+			public long run(int i){
+				final int mod = 2 + (i & 7);
+				List<Integer> removed = new ArrayList<Integer>();
+				for(int v : list){
+					if(v % mod == 0){
+						removed.add(v);
+					}
+				}
+				list.removeIf(new Predicate<Integer>(){
+					public boolean test(Integer v){
+						return v % mod == 0;
+					}
+				});
+				list.addAll(removed);
+				return list.size();
+			}
+		});
+		run("list.iteratorInsertRemove." + name, n, new Op(){
+			public long run(int i){
+				ListIterator<Integer> iter = list.listIterator(n / 2);
+				iter.add(i);
+				iter.previous();
+				iter.remove();
+				return iter.nextIndex();
+			}
+		});
+
+		if(list instanceof KWLinkedList){
+			// the same loops with a reused iterator and pooled nodes,
+			//		which should allocate nothing
+			final KWLinkedList<Integer> kw = (KWLinkedList<Integer>) list;
+			final List<ListIterator<Integer>> reuse = new ArrayList<ListIterator<Integer>>();
+			reuse.add(null);
+			kw.setNodePooling(64);
+			run("list.iterateReused." + name, n, new Op(){
+				public long run(int i){
+					ListIterator<Integer> iter = kw.listIterator(0, reuse.get(0));
+					reuse.set(0, iter);
+					long sum = 0;
+					while(iter.hasNext()){
+						sum += iter.next();
+					}
+					return sum;
+				}
+			});
+			run("list.iteratorInsertRemovePooled." + name, n, new Op(){
+				public long run(int i){
+					ListIterator<Integer> iter = kw.listIterator(n / 2, reuse.get(0));
+					reuse.set(0, iter);
+					iter.add(i);
+					iter.previous();
+					iter.remove();
+					return iter.nextIndex();
+				}
+			});
+			kw.setNodePooling(0);
+		}
+	}//listBenchmarks end
+
+	/**
+	 * Times the same list operations on an IntLinkedList, which needs no
+	 * 		boxing.
+	 * @param n
+	 * 			number of items
+	 */
+	static void intListBenchmarks(final int n){
+
+		final IntLinkedList list = new IntLinkedList();
+		for(int i = 0; i < n; i++){
+			list.add(i);
+		}
+		run("list.addRemoveTail.IntLinkedList", n, new Op(){
+			public long run(int i){
+				list.add(i);
+				return list.removeAt(list.size() - 1);
+			}
+		});
+		run("list.getSequential.IntLinkedList", n, new Op(){
+			public long run(int i){
+				return list.getInt(i % n);
+			}
+		});
+		run("list.iterate.IntLinkedList", n, new Op(){
+			public long run(int i){
+				long sum = 0;
+				IntListIterator iter = list.listIterator();
+				while(iter.hasNext()){
+					sum += iter.nextInt();
+				}
+				return sum;
+			}
+		});
+		run("list.iteratorInsertRemove.IntLinkedList", n, new Op(){
+			public long run(int i){
+				IntListIterator iter = list.listIterator(n / 2);
+				iter.add(i);
+				iter.previousInt();
+				iter.remove();
+				return iter.nextIndex();
+			}
+		});
+	}//intListBenchmarks end
+
+	/**
+	 * Times hit-testing and clicks on a scene of n windows, and drawing
+	 * 		it into an offscreen image with and without the surface cache 
+	 * 		and with the tiled renderer.
+	 * @param n
+	 * 			number of windows
+	 */
+	static void windowBenchmarks(int n){
+
+		final MainWindows scene = new SceneGenerator(n, n).generate();
+		Random rand = new Random(n);
+		final int[] points = randomPoints(rand, 4096);
+
+		run("window.hitTest", n, new Op(){
+			public long run(int i){
+				int p = (i & 4095) * 2;
+				Windows w = scene.index.topmostAt(points[p], points[p + 1]);
+				return w == null ? 0 : w.zOrder;
+			}
+		});
+		run("window.handleClick", n, new Op(){
+			public long run(int i){
+				int p = (i & 4095) * 2;
+				scene.handleClick(points[p], points[p + 1]);
+				return scene.windows.size();
+			}
+		});
+
+		final BufferedImage image = new BufferedImage(SimpleWindowsGUI.CANVAS_WIDTH,
+				SimpleWindowsGUI.CANVAS_HEIGHT, BufferedImage.TYPE_INT_RGB);
+		// one Graphics for every frame, so bytesPerOp counts only what 
+		//		drawing itself allocates
+		final Graphics2D g = image.createGraphics();
+		g.setClip(0, 0, image.getWidth(), image.getHeight());
+		for(final boolean cached : new boolean[]{ false, true }){
+			run("window.draw." + (cached ? "cached" : "direct"), n, new Op(){
+				public long run(int i){
+					Windows.cacheSurfaces = cached;
+					scene.draw(g);
+					return image.getRGB(i % image.getWidth(), 0);
+				}
+			});
+		}//for loop end
+		Windows.cacheSurfaces = true;
+		g.dispose();
+
+		final TiledRenderer tiles = new TiledRenderer();
+		run("window.draw.tiled", n, new Op(){
+			public long run(int i){
+				tiles.render(scene, image);
+				return image.getRGB(i % image.getWidth(), 0);
+			}
+		});
+	}//windowBenchmarks end
+
+	/**
+	 * Times clicks and drawing on a single window holding n squares.
+	 * @param n
+	 * 			number of squares
+	 */
+	static void squareBenchmarks(int n){
+
+		final Windows w = new Windows(0, 0, SimpleWindowsGUI.CANVAS_WIDTH - 8,
+				SimpleWindowsGUI.CANVAS_HEIGHT - 3, Color.blue);
+		Random rand = new Random(n);
+		for(int i = 0; i < n; i++){
+			w.grid.add(10 + rand.nextInt(w.winWidth - 20),
+					10 + rand.nextInt(w.winHeight - 20),
+					w.SQ_WIDTH, w.SQ_HEIGHT, Color.blue.getRGB());
+		}//for loop end
+		final int[] points = randomPoints(rand, 4096);
+
+		run("square.handleClick", n, new Op(){
+			public long run(int i){
+				// clicking the same point twice removes or adds and then
+				//		undoes it, so the square count stays near n
+				int p = (i & 4095) * 2;
+				w.handleClick(points[p], points[p + 1]);
+				w.handleClick(points[p], points[p + 1]);
+				return w.squares.size();
+			}
+		});
+
+		final BufferedImage image = new BufferedImage(SimpleWindowsGUI.CANVAS_WIDTH,
+				SimpleWindowsGUI.CANVAS_HEIGHT, BufferedImage.TYPE_INT_RGB);
+		final Graphics2D g = image.createGraphics();
+		for(final boolean cached : new boolean[]{ false, true }){
+			run("square.draw." + (cached ? "cached" : "direct"), n, new Op(){
+				public long run(int i){
+					Windows.cacheSurfaces = cached;
+					w.draw(g, true, w.squareColor);
+					return image.getRGB(i % image.getWidth(), 10);
+				}
+			});
+		}//for loop end
+		Windows.cacheSurfaces = true;
+		g.dispose();
+	}//squareBenchmarks end
+
+	/**
+	 * @param rand
+	 * 			random number generator
+	 * @param count
+	 * 			number of points
+	 * @return count random points on the canvas as x, y pairs
+	 */
+	static int[] randomPoints(Random rand, int count){
+		int[] points = new int[count * 2];
+		for(int i = 0; i < count; i++){
+			points[i * 2] = rand.nextInt(SimpleWindowsGUI.CANVAS_WIDTH);
+			points[i * 2 + 1] = rand.nextInt(SimpleWindowsGUI.CANVAS_HEIGHT);
+		}
+		return points;
+	}//randomPoints end
+
+	/**
+	 * Warms up and times one benchmark, printing one line per measured
+	 * 		iteration.
+	 * @param name
+	 * 			name of the benchmark
+	 * @param n
+	 * 			size parameter of the benchmark
+	 * @param op
+	 * 			operation being timed
+	 */
+	static void run(String name, int n, Op op){
+
+		Blackhole bh = blackhole;
+		int i = 0; // operation counter
+		long end = System.nanoTime() + measureMillis * 1000000L;
+		while(System.nanoTime() < end){ // one iteration of warm up
+			bh.consume(op.run(i++));
+		}
+
+		for(int it = 0; it < iterations; it++){
+			// runs in batches so the clock is not read on every operation
+			long ops = 0;
+			int batch = 1;
+			long startBytes = allocatedBytes();
+			long start = System.nanoTime();
+			long now = start;
+			end = start + measureMillis * 1000000L;
+			while(now < end){
+				for(int j = 0; j < batch; j++){
+					bh.consume(op.run(i++));
+				}
+				ops += batch;
+				now = System.nanoTime();
+				if(now - start < (end - start) / 100){
+					batch *= 2;
+				}
+			}//while end
+
+			long bytes = allocatedBytes() - startBytes;
+
+			double nsPerOp = (double) (now - start) / ops;
+			double bytesPerOp = startBytes < 0 ? -1 : (double) bytes / ops;
+			raw.println(name + " " + n + " " + nsPerOp + " " + bytesPerOp);
+			System.err.println(String.format("%-40s %8d %14.1f ns/op %12.1f B/op", 
+					name, n, nsPerOp, bytesPerOp));
+		}//for loop end
+	}//run end
+
+	/**
+	 * @return bytes allocated so far by this thread, or -1 if the JVM 
+	 * 		cannot count them
+	 */
+	static long allocatedBytes(){
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if(threads instanceof com.sun.management.ThreadMXBean){
+			return ((com.sun.management.ThreadMXBean) threads)
+					.getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}//allocatedBytes end
+}//WindowBenchmark end
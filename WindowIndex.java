@@ -0,0 +1,403 @@
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+
+/**
+ * Uniform grid used to find the topmost window under a point without
+ * 		walking every window. Each cell keeps entries for the windows
+ * 		whose rectangle overlaps it, from bottom to top, so a hit-test
+ * 		scans a cell from its top end and stops at the first window
+ * 		holding the point.
+ *
+ * Raising a window does not move anything: it appends a new entry for
+ * 		the window to the top end of each of its cells and bumps the
+ * 		indexStamp of the window, which turns its older entries stale.
+ * 		Hit-tests skip stale entries, and a cell drops them when it runs
+ * 		out of room and at least half its entries are stale, so a raise
+ * 		costs one append per cell and a cell never holds more than about
+ * 		twice as many entries as windows.
+ *
+ * The grid starts out over the canvas and grows whenever a window is
+ * 		added or moved outside it, so windows dragged off the canvas and
+ * 		scenes larger than it get cells of their own instead of piling
+ * 		into the border cells. It grows by half again on the side that
+ * 		was left, and once it would have more than MAX_CELLS cells the
+ * 		cells are made bigger instead.
+ * @author Grady Barrett
+ */
+public class WindowIndex {
+
+	static final int MAX_CELLS = 1 << 14; // most cells before they get bigger
+
+	int cellSize = 64; // width and height of a grid cell in pixels
+	int originX = 0; // canvas x location of the left edge of the grid
+	int originY = 0; // canvas y location of the top edge of the grid
+	int cols; // number of grid columns
+	int rows; // number of grid rows
+	Cell[] cells; // entries overlapping each cell, indexed by row * cols + col
+
+	HashSet<Windows> members = new HashSet<Windows>(); // every window in the index
+
+	/**
+	 * Entries of one cell, bottom first. Entry i is live if windows[i]
+	 * 		is not null and stamps[i] is the indexStamp of that window;
+	 * 		the live entries are always in increasing zOrder.
+	 */
+	static class Cell {
+
+		Windows[] windows = new Windows[4]; // window of each entry, null once dropped
+		int[] stamps = new int[4]; // indexStamp of the window when the entry was made
+		int size = 0; // number of entries, live and stale
+		int live = 0; // number of live entries
+
+		/**
+		 * @param i
+		 * 			index of an entry
+		 * @return true if the entry is the current one for its window
+		 */
+		boolean isLive(int i){
+			Windows w = windows[i];
+			return w != null && stamps[i] == w.indexStamp;
+		}
+
+		/**
+		 * Adds a live entry on top. Stale entries are dropped first if
+		 * 		the cell is full and at least half of it is stale.
+		 * @param w
+		 * 			window of the entry
+		 */
+		void append(Windows w){
+
+			if(size == windows.length){
+				if(size - live >= live){
+					compact();
+				}else{
+					windows = Arrays.copyOf(windows, size * 2);
+					stamps = Arrays.copyOf(stamps, size * 2);
+				}
+			}
+			windows[size] = w;
+			stamps[size] = w.indexStamp;
+			size++;
+			live++;
+		}//append end
+
+		/**
+		 * Puts a live entry among the others by zOrder. Used for windows
+		 * 		moved into the cell, which need not be on top.
+		 * @param w
+		 * 			window of the entry
+		 */
+		void insert(Windows w){
+
+			compact(); // leaves only live entries, in zOrder
+			int low = 0;
+			int high = size;
+			while(low < high){
+				int middle = (low + high) >>> 1;
+				if(windows[middle].zOrder < w.zOrder){
+					low = middle + 1;
+				}else{
+					high = middle;
+				}
+			}//while end
+			append(w);
+			if(low < size - 1){
+				System.arraycopy(windows, low, windows, low + 1, size - 1 - low);
+				System.arraycopy(stamps, low, stamps, low + 1, size - 1 - low);
+				windows[low] = w;
+				stamps[low] = w.indexStamp;
+			}
+		}//insert end
+
+		/**
+		 * Drops the live entry of a window that left the cell.
+		 * @param w
+		 * 			window that left
+		 */
+		void drop(Windows w){
+
+			for(int i = size - 1; i >= 0; i--){
+				if(windows[i] == w && stamps[i] == w.indexStamp){
+					windows[i] = null;
+					live--;
+					return;
+				}
+			}//for loop end
+		}//drop end
+
+		/**
+		 * Packs the live entries at the bottom of the arrays, in order.
+		 */
+		void compact(){
+
+			int j = 0;
+			for(int i = 0; i < size; i++){
+				if(isLive(i)){
+					windows[j] = windows[i];
+					stamps[j] = stamps[i];
+					j++;
+				}
+			}//for loop end
+			Arrays.fill(windows, j, size, null);
+			size = j;
+		}//compact end
+	}//Cell end
+
+	/**
+	 * Constructor that builds an empty grid covering the given area.
+	 * @param width
+	 * 			width of the area covered by the grid at first
+	 * @param height
+	 * 			height of the area covered by the grid at first
+	 */
+	public WindowIndex(int width, int height){
+		layout(0, 0, Math.max(width, 1), Math.max(height, 1), cellSize);
+	}//WindowIndex end
+
+	/**
+	 * Makes empty cells covering an area.
+	 * @param left
+	 * 			canvas x location of the left edge of the area
+	 * @param top
+	 * 			canvas y location of the top edge of the area
+	 * @param width
+	 * 			width of the area
+	 * @param height
+	 * 			height of the area
+	 * @param newCellSize
+	 * 			width and height of a cell
+	 */
+	private void layout(int left, int top, long width, long height, int newCellSize){
+
+		cellSize = newCellSize;
+		originX = left;
+		originY = top;
+		cols = (int) ((width + cellSize - 1) / cellSize);
+		rows = (int) ((height + cellSize - 1) / cellSize);
+		cells = new Cell[cols * rows];
+
+		for(int i = 0; i < cells.length; i++){
+			cells[i] = new Cell();
+		}//for loop end
+	}//layout end
+
+	/**
+	 * Adds a window on top of every cell its rectangle overlaps, growing
+	 * 		the grid first if the window is outside it.
+	 * @param w
+	 * 			window to be added, already on top of the stack
+	 */
+	public void add(Windows w){
+
+		members.add(w);
+		if(!covers(w)){
+			grow(w); // files every window, w included
+			return;
+		}
+		int lastCol = col(w.winUpperLeftX + w.winWidth);
+		int lastRow = row(w.winUpperLeftY + w.winHeight);
+		for(int r = row(w.winUpperLeftY); r <= lastRow; r++){
+			for(int c = col(w.winUpperLeftX); c <= lastCol; c++){
+				cells[r * cols + c].append(w);
+			}
+		}//for loop end
+	}//add end
+
+	/**
+	 * Puts a window that is being raised on top of each of its cells.
+	 * 		Its old entries turn stale rather than being moved.
+	 * @param w
+	 * 			window to be raised
+	 */
+	public void raise(Windows w){
+
+		w.indexStamp++;
+		int lastCol = col(w.winUpperLeftX + w.winWidth);
+		int lastRow = row(w.winUpperLeftY + w.winHeight);
+		for(int r = row(w.winUpperLeftY); r <= lastRow; r++){
+			for(int c = col(w.winUpperLeftX); c <= lastCol; c++){
+				Cell cell = cells[r * cols + c];
+				cell.live--; // the old entry went stale
+				cell.append(w);
+			}
+		}//for loop end
+	}//raise end
+
+	/**
+	 * Removes a window from every cell its rectangle overlaps. Must be
+	 * 		called before the window geometry changes.
+	 * @param w
+	 * 			window to be removed
+	 */
+	public void remove(Windows w){
+
+		members.remove(w);
+		w.indexStamp++; // every entry of the window goes stale
+		int lastCol = col(w.winUpperLeftX + w.winWidth);
+		int lastRow = row(w.winUpperLeftY + w.winHeight);
+		for(int r = row(w.winUpperLeftY); r <= lastRow; r++){
+			for(int c = col(w.winUpperLeftX); c <= lastCol; c++){
+				cells[r * cols + c].live--;
+			}
+		}//for loop end
+	}//remove end
+
+	/**
+	 * Updates the cells of a window that was moved or resized. Only the
+	 * 		cells the window left or entered are touched, so a small move
+	 * 		that stays in the same cells costs nothing.
+	 * @param w
+	 * 			window that changed, already at its new geometry
+	 * @param oldX
+	 * 			x location before the change
+	 * @param oldY
+	 * 			y location before the change
+	 * @param oldWidth
+	 * 			width before the change
+	 * @param oldHeight
+	 * 			height before the change
+	 */
+	public void update(Windows w, int oldX, int oldY, int oldWidth, int oldHeight){
+
+		if(!covers(w)){
+			grow(w); // files every window where it is now
+			return;
+		}
+		int oldFirstCol = col(oldX);
+		int oldLastCol = col(oldX + oldWidth);
+		int oldFirstRow = row(oldY);
+		int oldLastRow = row(oldY + oldHeight);
+		int firstCol = col(w.winUpperLeftX);
+		int lastCol = col(w.winUpperLeftX + w.winWidth);
+		int firstRow = row(w.winUpperLeftY);
+		int lastRow = row(w.winUpperLeftY + w.winHeight);
+
+		// cells the window left
+		for(int r = oldFirstRow; r <= oldLastRow; r++){
+			for(int c = oldFirstCol; c <= oldLastCol; c++){
+				if(r < firstRow || r > lastRow || c < firstCol || c > lastCol){
+					cells[r * cols + c].drop(w);
+				}
+			}
+		}//for loop end
+
+		// cells the window entered
+		for(int r = firstRow; r <= lastRow; r++){
+			for(int c = firstCol; c <= lastCol; c++){
+				if(r < oldFirstRow || r > oldLastRow || c < oldFirstCol || c > oldLastCol){
+					cells[r * cols + c].insert(w);
+				}
+			}
+		}//for loop end
+	}//update end
+
+	/**
+	 * Finds the window with the highest zOrder that contains the point.
+	 * 		The cell is scanned from the top down, so the scan ends at the
+	 * 		first live entry whose window holds the point.
+	 * @param x
+	 * 			x coordinate of the point
+	 * @param y
+	 * 			y coordinate of the point
+	 * @return the topmost window under the point, or null if the point
+	 * 		is not inside any window
+	 */
+	public Windows topmostAt(int x, int y){
+
+		if(x < originX || y < originY || x - originX >= (long) cols * cellSize
+				|| y - originY >= (long) rows * cellSize){
+			return null; // every window lies inside the grid
+		}
+		Cell cell = cells[row(y) * cols + col(x)];
+
+		for(int i = cell.size - 1; i >= 0; i--){
+			if(cell.isLive(i) && cell.windows[i].isInside(x, y)){
+				return cell.windows[i];
+			}
+		}//for loop end
+		return null;
+	}//topmostAt end
+
+	/**
+	 * @param w
+	 * 			a window
+	 * @return true if the whole rectangle of the window lies in the grid
+	 */
+	private boolean covers(Windows w){
+		return w.winUpperLeftX >= originX && w.winUpperLeftY >= originY
+				&& (long) w.winUpperLeftX + w.winWidth - originX < (long) cols * cellSize
+				&& (long) w.winUpperLeftY + w.winHeight - originY < (long) rows * cellSize;
+	}//covers end
+
+	/**
+	 * Makes the grid cover a window that lies outside it, with room to
+	 * 		spare on the sides it grew, and files every window again from
+	 * 		the bottom up.
+	 * @param w
+	 * 			window that must be covered
+	 */
+	private void grow(Windows w){
+
+		long left = Math.min(originX, w.winUpperLeftX);
+		long top = Math.min(originY, w.winUpperLeftY);
+		long right = Math.max(originX + (long) cols * cellSize,
+				(long) w.winUpperLeftX + w.winWidth + 1);
+		long bottom = Math.max(originY + (long) rows * cellSize,
+				(long) w.winUpperLeftY + w.winHeight + 1);
+		long width = right - left;
+		long height = bottom - top;
+		if(left < originX){
+			left = Math.max(left - width / 2, Integer.MIN_VALUE);
+		}
+		if(right > originX + (long) cols * cellSize){
+			right += width / 2;
+		}
+		if(top < originY){
+			top = Math.max(top - height / 2, Integer.MIN_VALUE);
+		}
+		if(bottom > originY + (long) rows * cellSize){
+			bottom += height / 2;
+		}
+
+		long size = cellSize;
+		while(((right - left + size - 1) / size) * ((bottom - top + size - 1) / size) > MAX_CELLS){
+			size *= 2;
+		}
+		layout((int) left, (int) top, right - left, bottom - top, (int) Math.min(size, 1 << 30));
+
+		Windows[] order = members.toArray(new Windows[members.size()]);
+		Arrays.sort(order, new Comparator<Windows>(){
+			public int compare(Windows a, Windows b){
+				return Long.compare(a.zOrder, b.zOrder);
+			}
+		});
+		for(Windows m : order){
+			int lastCol = col(m.winUpperLeftX + m.winWidth);
+			int lastRow = row(m.winUpperLeftY + m.winHeight);
+			for(int r = row(m.winUpperLeftY); r <= lastRow; r++){
+				for(int c = col(m.winUpperLeftX); c <= lastCol; c++){
+					cells[r * cols + c].append(m);
+				}
+			}
+		}//for loop end
+	}//grow end
+
+	/**
+	 * @param x
+	 * 			x coordinate inside the grid
+	 * @return grid column holding x
+	 */
+	private int col(int x){
+		return (int) (((long) x - originX) / cellSize);
+	}
+
+	/**
+	 * @param y
+	 * 			y coordinate inside the grid
+	 * @return grid row holding y
+	 */
+	private int row(int y){
+		return (int) (((long) y - originY) / cellSize);
+	}
+}//WindowIndex end
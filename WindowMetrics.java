@@ -0,0 +1,156 @@
+import java.lang.management.ManagementFactory;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Built-in metrics for the window manager: latency histograms for clicks,
+ * 		hit-tests and painting, and counters for squares, windows and
+ * 		frames. They are published as JMX MBeans under the domain
+ * 		"WindowManager" and, if asked for, printed to standard error every
+ * 		few seconds.
+ *
+ * Metrics are off unless the program is started with
+ * 		-Dwindowmanager.metrics=true, and -Dwindowmanager.metrics.log=n
+ * 		adds a log line every n seconds. ENABLED is a constant, so every
+ * 		call site is written as "if(WindowMetrics.ENABLED)" and the JIT
+ * 		drops the whole block, clock reads included, when it is false.
+ * @author Grady Barrett
+ */
+public class WindowMetrics implements WindowMetricsMBean {
+
+	// whether metrics are collected, fixed when the class is loaded
+	static final boolean ENABLED = Boolean.getBoolean("windowmanager.metrics");
+
+	// seconds between log lines, 0 for none
+	static final int LOG_SECONDS = Integer.getInteger("windowmanager.metrics.log", 0);
+
+	// time from SimpleWindowsGUI.mouseClicked until the click is applied, 
+	//		or with an InputPipeline until the snapshot showing it is published
+	static final LatencyHistogram click = new LatencyHistogram("click");
+
+	// time spent in MainWindows.handleClick
+	static final LatencyHistogram managerClick = new LatencyHistogram("managerClick");
+
+	// time spent finding the window under a click
+	static final LatencyHistogram hitTest = new LatencyHistogram("hitTest");
+
+	// time spent in Windows.handleClick
+	static final LatencyHistogram windowClick = new LatencyHistogram("windowClick");
+
+	// time spent in RectanglesCanvas.paintComponent
+	static final LatencyHistogram paint = new LatencyHistogram("paint");
+
+	static final LongAdder squaresAdded = new LongAdder(); // squares added by clicks
+	static final LongAdder squaresRemoved = new LongAdder(); // squares removed by clicks
+	static final LongAdder windowsRaised = new LongAdder(); // windows raised by clicks
+	static final LongAdder frames = new LongAdder(); // frames painted
+	static final LongAdder windowsDrawn = new LongAdder(); // windows drawn, all frames
+	static final LongAdder squaresDrawn = new LongAdder(); // squares drawn, all frames
+
+	static volatile long frameStartWindows; // windowsDrawn when the frame began
+	static volatile long frameStartSquares; // squaresDrawn when the frame began
+	static volatile long lastFrameWindows; // windows drawn in the last frame
+	static volatile long lastFrameSquares; // squares drawn in the last frame
+
+	static{
+		if(ENABLED){
+			register();
+			if(LOG_SECONDS > 0){
+				Timer timer = new Timer("window-metrics", true);
+				timer.scheduleAtFixedRate(new TimerTask(){
+					public void run(){
+						System.err.println(logLine());
+					}
+				}, LOG_SECONDS * 1000L, LOG_SECONDS * 1000L);
+			}
+		}
+	}
+
+	/**
+	 * Registers the histograms and counters with the platform MBean
+	 * 		server. Failure only costs the JMX view, so it is reported and
+	 * 		otherwise ignored.
+	 */
+	static void register(){
+
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try{
+			for(LatencyHistogram h : new LatencyHistogram[]{ click, managerClick,
+					hitTest, windowClick, paint }){
+				server.registerMBean(h, new ObjectName("WindowManager:type=Latency,name="
+						+ h.name));
+			}
+			server.registerMBean(new WindowMetrics(), new ObjectName(
+					"WindowManager:type=Counters"));
+		}catch(JMException e){
+			System.err.println("window metrics not registered with JMX: " + e);
+		}
+	}//register end
+
+	/**
+	 * Marks the start of a frame, for the per-frame draw counts.
+	 */
+	static void frameStart(){
+		frameStartWindows = windowsDrawn.sum();
+		frameStartSquares = squaresDrawn.sum();
+	}//frameStart end
+
+	/**
+	 * Marks the end of a frame.
+	 * @param nanos
+	 * 			time spent painting it
+	 */
+	static void frameEnd(long nanos){
+		paint.record(nanos);
+		frames.increment();
+		lastFrameWindows = windowsDrawn.sum() - frameStartWindows;
+		lastFrameSquares = squaresDrawn.sum() - frameStartSquares;
+	}//frameEnd end
+
+	/**
+	 * @return one line summing up every metric
+	 */
+	static String logLine(){
+		return "metrics: " + click + " | " + managerClick + " | " + hitTest + " | "
+				+ windowClick + " | " + paint + " | squares +" + squaresAdded.sum()
+				+ " -" + squaresRemoved.sum() + " raised " + windowsRaised.sum()
+				+ " | last frame " + lastFrameWindows + " windows " + lastFrameSquares
+				+ " squares";
+	}//logLine end
+
+	public long getSquaresAdded(){
+		return squaresAdded.sum();
+	}
+
+	public long getSquaresRemoved(){
+		return squaresRemoved.sum();
+	}
+
+	public long getWindowsRaised(){
+		return windowsRaised.sum();
+	}
+
+	public long getFrames(){
+		return frames.sum();
+	}
+
+	public long getWindowsDrawn(){
+		return windowsDrawn.sum();
+	}
+
+	public long getSquaresDrawn(){
+		return squaresDrawn.sum();
+	}
+
+	public long getLastFrameWindows(){
+		return lastFrameWindows;
+	}
+
+	public long getLastFrameSquares(){
+		return lastFrameSquares;
+	}
+}//WindowMetrics end
@@ -0,0 +1,48 @@
+/**
+ * JMX view of the counters kept by WindowMetrics.
+ * @author Grady Barrett
+ */
+public interface WindowMetricsMBean {
+
+	/**
+	 * @return the number of squares added by clicks
+	 */
+	long getSquaresAdded();
+
+	/**
+	 * @return the number of squares removed by clicks
+	 */
+	long getSquaresRemoved();
+
+	/**
+	 * @return the number of windows raised to the top by clicks
+	 */
+	long getWindowsRaised();
+
+	/**
+	 * @return the number of frames painted
+	 */
+	long getFrames();
+
+	/**
+	 * @return the number of windows drawn over all frames
+	 */
+	long getWindowsDrawn();
+
+	/**
+	 * @return the number of squares drawn over all frames, not counting 
+	 * 		squares copied from a cached window surface
+	 */
+	long getSquaresDrawn();
+
+	/**
+	 * @return the number of windows drawn in the last frame
+	 */
+	long getLastFrameWindows();
+
+	/**
+	 * @return the number of squares drawn in the last frame, not counting 
+	 * 		squares copied from a cached window surface
+	 */
+	long getLastFrameSquares();
+}//WindowMetricsMBean end
@@ -0,0 +1,287 @@
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Z-order manager for windows. Windows are linked to the windows directly
+ * 		above and below them through their own above/below fields, so
+ * 		raising, lowering or removing a window is a handful of link
+ * 		updates instead of a list search. Each window also holds a slot
+ * 		number in its zOrder field that grows from bottom to top; a
+ * 		Fenwick tree over the slots answers index lookups in O(log n).
+ * @author Grady Barrett
+ */
+public class WindowStack implements Iterable<Windows> {
+
+	Windows bottom = null; // window at the back of the stack
+	Windows top = null; // window at the front of the stack (active window)
+	int size = 0; // number of windows in the stack
+	int modCount = 0; // number of changes, used to make iterators fail fast
+
+	Windows[] bySlot = new Windows[16]; // window held by each slot
+	int[] tree = new int[17]; // Fenwick tree counting used slots, 1-based
+	int lowSlot = 8; // slot of the bottom window
+	int highSlot = 7; // slot of the top window
+
+	/**
+	 * Puts a window on top of the stack.
+	 * @param w
+	 * 			window to be added, must not already be in a stack
+	 */
+	public void addFront(Windows w){
+
+		if(highSlot + 1 >= bySlot.length){
+			renumber();
+		}
+		w.below = top;
+		w.above = null;
+		if(top == null){
+			bottom = w;
+		}else{
+			top.above = w;
+		}
+		top = w;
+		size++;
+		modCount++;
+		occupy(w, ++highSlot);
+		if(size == 1){
+			lowSlot = highSlot;
+		}
+	}//addFront end
+
+	/**
+	 * Puts a window at the bottom of the stack.
+	 * @param w
+	 * 			window to be added, must not already be in a stack
+	 */
+	public void addBack(Windows w){
+
+		if(lowSlot - 1 < 0){
+			renumber();
+		}
+		w.above = bottom;
+		w.below = null;
+		if(bottom == null){
+			top = w;
+		}else{
+			bottom.below = w;
+		}
+		bottom = w;
+		size++;
+		modCount++;
+		occupy(w, --lowSlot);
+		if(size == 1){
+			highSlot = lowSlot;
+		}
+	}//addBack end
+
+	/**
+	 * Unlinks a window from the stack.
+	 * @param w
+	 * 			window to be removed, must be in this stack
+	 */
+	public void remove(Windows w){
+
+		if(w.below == null){
+			bottom = w.above;
+		}else{
+			w.below.above = w.above;
+		}
+		if(w.above == null){
+			top = w.below;
+		}else{
+			w.above.below = w.below;
+		}
+		w.above = null;
+		w.below = null;
+		size--;
+		modCount++;
+
+		int slot = (int) w.zOrder;
+		bySlot[slot] = null;
+		update(slot, -1);
+		if(size == 0){ // recenter the slots of an empty stack
+			lowSlot = bySlot.length / 2;
+			highSlot = lowSlot - 1;
+		}else{
+			lowSlot = (int) bottom.zOrder;
+			highSlot = (int) top.zOrder;
+		}
+	}//remove end
+
+	/**
+	 * Moves a window to the front of the stack.
+	 * @param w
+	 * 			window to be raised, must be in this stack
+	 */
+	public void raise(Windows w){
+		if(w != top){
+			remove(w);
+			addFront(w);
+		}
+	}//raise end
+
+	/**
+	 * Moves a window to the back of the stack.
+	 * @param w
+	 * 			window to be lowered, must be in this stack
+	 */
+	public void lower(Windows w){
+		if(w != bottom){
+			remove(w);
+			addBack(w);
+		}
+	}//lower end
+
+	/**
+	 * @return the window at the front of the stack, or null if empty
+	 */
+	public Windows top(){
+		return top;
+	}
+
+	/**
+	 * @return the window at the back of the stack, or null if empty
+	 */
+	public Windows bottom(){
+		return bottom;
+	}
+
+	/**
+	 * @return the number of windows in the stack
+	 */
+	public int size(){
+		return size;
+	}
+
+	/**
+	 * Finds the position of a window counted from the back of the stack.
+	 * @param w
+	 * 			window to be found, must be in this stack
+	 * @return the index of the window, 0 for the bottom window
+	 */
+	public int indexOf(Windows w){
+
+		int count = 0; // number of used slots up to and including w
+		for(int i = (int) w.zOrder + 1; i > 0; i -= i & -i){
+			count += tree[i];
+		}
+		return count - 1;
+	}//indexOf end
+
+	/**
+	 * Finds the window at a position counted from the back of the stack.
+	 * @param index
+	 * 			position of the window, 0 for the bottom window
+	 * @return the window at index
+	 * @throws IndexOutOfBoundsException
+	 *             if the index is out of range (i < 0 || i >= size())
+	 */
+	public Windows get(int index){
+
+		if(index < 0 || index >= size){
+			throw new IndexOutOfBoundsException("Invalid index " + index);
+		}
+
+		// walks down the Fenwick tree looking for the (index+1)th used slot
+		int pos = 0;
+		int remaining = index + 1;
+		for(int step = Integer.highestOneBit(bySlot.length); step > 0; step >>= 1){
+			if(pos + step <= bySlot.length && tree[pos + step] < remaining){
+				pos += step;
+				remaining -= tree[pos];
+			}
+		}//for loop end
+		return bySlot[pos]; // tree index pos + 1 is slot pos
+	}//get end
+
+	/**
+	 * @return an iterator that walks the windows from back to front and 
+	 * 		throws ConcurrentModificationException if the stack changes
+	 */
+	public Iterator<Windows> iterator(){
+		return new Iterator<Windows>(){
+			Windows nextWindow = bottom; // window returned by next
+			int expectedModCount = modCount; // modCount when created
+
+			public boolean hasNext(){
+				return nextWindow != null;
+			}
+
+			public Windows next(){
+				if(modCount != expectedModCount){
+					throw new ConcurrentModificationException();
+				}
+				if(nextWindow == null){
+					throw new NoSuchElementException();
+				}
+				Windows w = nextWindow;
+				nextWindow = w.above;
+				return w;
+			}
+		};
+	}//iterator end
+
+	/**
+	 * Records that a window holds a slot.
+	 * @param w
+	 * 			window taking the slot
+	 * @param slot
+	 * 			slot being taken
+	 */
+	private void occupy(Windows w, int slot){
+		w.zOrder = slot;
+		bySlot[slot] = w;
+		update(slot, 1);
+	}
+
+	/**
+	 * Adds delta to the used-slot count of a slot in the Fenwick tree.
+	 * @param slot
+	 * 			slot being changed
+	 * @param delta
+	 * 			+1 when the slot is taken, -1 when it is freed
+	 */
+	private void update(int slot, int delta){
+		for(int i = slot + 1; i < tree.length; i += i & -i){
+			tree[i] += delta;
+		}
+	}
+
+	/**
+	 * Gives the windows fresh, evenly centered slots once the top or
+	 * 		bottom of the slot array is reached. Relative order is kept,
+	 * 		so anything comparing zOrder values stays valid. Runs in O(n)
+	 * 		but only after O(n) raises or lowers, so the cost is amortized.
+	 */
+	private void renumber(){
+
+		int capacity = Math.max(16, size * 4);
+		if(bySlot.length == capacity){
+			// same number of windows as last time, so the arrays are 
+			//		cleared rather than made again
+			Arrays.fill(bySlot, null);
+			Arrays.fill(tree, 0);
+		}else{
+			bySlot = new Windows[capacity];
+			tree = new int[capacity + 1];
+		}
+		lowSlot = (capacity - size) / 2;
+		highSlot = lowSlot - 1;
+
+		for(Windows w = bottom; w != null; w = w.above){
+			w.zOrder = ++highSlot;
+			bySlot[highSlot] = w;
+			tree[highSlot + 1] = 1;
+		}//for loop end
+
+		// builds the Fenwick tree from the slot counts in O(n)
+		for(int i = 1; i < tree.length; i++){
+			int parent = i + (i & -i);
+			if(parent < tree.length){
+				tree[parent] += tree[i];
+			}
+		}//for loop end
+	}//renumber end
+}//WindowStack end
@@ -1,6 +1,11 @@
 import java.awt.Color;
 import java.awt.Graphics;
-import java.util.ListIterator;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * Class to create, manage and draw window objects 
@@ -15,9 +20,59 @@ public class Windows{
 	final int SQ_WIDTH = 20; // constant square width to pass to square constructor
 	final int SQ_HEIGHT = 20; // constant square height to pass to square constructor
 	Color squareColor; // color of squares in a specific window.
+	long zOrder; // stacking order, higher values are drawn on top
+	int id; // number naming this window in the operation journal
+	int indexStamp; // WindowIndex entries of this window with another stamp are stale
+	Windows above; // next window toward the front in its WindowStack
+	Windows below; // next window toward the back in its WindowStack
 	
-	// linked list of square objects
-	KWLinkedList<Square> squares = new KWLinkedList<Square>(); 
+	// packed square data for this window
+	SquareStorage squares; 
+	
+	// grid of store indices, bucketed by location
+	SquareGrid grid; 
+	
+	// whether draw may composite a cached image instead of drawing directly
+	static boolean cacheSurfaces = true;
+	
+	// below this many squares drawing directly is cheaper than a blit
+	static int cacheMinSquares = 64;
+	
+	// cached opaque image of everything drawn inside getOpaqueBounds, or 
+	//		null if it must be rebuilt
+	BufferedImage surface; 
+	
+	// pixels of surface, one int per pixel, squares are filled into it 
+	//		directly
+	int[] surfacePixels;
+	
+	// focus state the border in surface was drawn for
+	boolean surfaceFront; 
+	
+	// Graphics drawing into surface, translated to the canvas location 
+	//		surfaceX, surfaceY of the window when it was made, or null
+	Graphics2D surfaceGraphics;
+	int surfaceX;
+	int surfaceY;
+	
+	// area returned by handleClick for an added square, and area of the 
+	//		border patched when the focus changes, both reused
+	private Rectangle added = new Rectangle();
+	private Rectangle band = new Rectangle();
+	
+	// area of the window, relative to its upper left corner, whose 
+	//		squares changed since view was made; empty if none did
+	private Rectangle viewDamage = new Rectangle();
+	
+	// number of times the squares of this window have changed
+	int version = 0;
+	
+	// whether some squares stick out of the window after it was made 
+	//		smaller, so drawing them must be clipped to the window
+	boolean clipSquares = false;
+	
+	// immutable copy of this window handed out by snapshot, or null
+	SceneSnapshot.WindowView view;
 	
 	/**
 	 * Constructor to initialize x & y location and window width & height variables
@@ -34,13 +89,39 @@ public class Windows{
 	 */
 	public Windows(int newX, int newY, int newWidth, int newHeight, 
 			Color newSquareColor){
+		this(newX, newY, newWidth, newHeight, newSquareColor, new SquareStore());
+	}
+	
+	/**
+	 * Constructor for a window whose squares are kept in the given 
+	 * 		storage, such as an OffHeapSquareStore for very many squares.
+	 * @param newX 
+	 * 			new x location for window
+	 * @param newY
+	 * 			new y location for window
+	 * @param newWidth
+	 * 			new width of window
+	 * @param newHeight
+	 * 			new height of window
+	 * @param NewSquareColor
+	 * 			new color for all squares in a specific window
+	 * @param newSquares
+	 * 			storage for the squares, with locations relative to the 
+	 * 				window; any squares already in it are filed in the grid
+	 */
+	public Windows(int newX, int newY, int newWidth, int newHeight, 
+			Color newSquareColor, SquareStorage newSquares){
 		
 		winUpperLeftX = newX;
 		winUpperLeftY = newY;
 		winWidth = newWidth;
 		winHeight = newHeight;
 		squareColor = newSquareColor;
-		
+		squares = newSquares;
+		squares.moveTo(newX, newY);
+		grid = new SquareGrid(squares, newWidth, newHeight, SQ_WIDTH, SQ_HEIGHT);
+		grid.fileAll();
+		clipSquares = !squares.fitsIn(newWidth, newHeight);
 	}
 	
 	/**
@@ -52,18 +133,271 @@ public class Windows{
 	 * 			boolean that tells whether window to be drawn is the 
 	 * 				front/active window
 	 * @param color
-	 * 			color of all squares in a specific window
+	 * 			unused, each square is drawn in its own palette color
 	 */
 	public void draw(Graphics g, boolean front, Color color) {
+		draw(g, front, color, null);
+	}//draw end
+	
+	/**
+	 * draw method that also takes the opaque areas of the windows above 
+	 * 		this one, so squares hidden under them need not be drawn.
+	 * @param g
+	 * 			Graphics object for drawing
+	 * @param front
+	 * 			boolean that tells whether window to be drawn is the 
+	 * 				front/active window
+	 * @param color
+	 * 			unused, each square is drawn in its own palette color
+	 * @param occluders
+	 * 			opaque rectangles of higher windows, may be null
+	 */
+	public void draw(Graphics g, boolean front, Color color, 
+			ArrayList<Rectangle> occluders) {
+		
+		if(!cacheSurfaces || squares.size() < cacheMinSquares){
+			invalidate(); // not worth keeping for so few squares
+			render(g, front, occluders);
+			return;
+		}
+		
+		if(surface == null){
+			surface = new BufferedImage(winWidth + 1, winHeight + 1, 
+					BufferedImage.TYPE_INT_RGB);
+			surfacePixels = ((DataBufferInt) surface.getRaster().getDataBuffer()).getData();
+			surfaceFront = front;
+			patchSurface(getOpaqueBounds());
+		}else if(surfaceFront != front){
+			// only the border changes color, so only the border band and 
+			//		the squares lying on it are redrawn
+			surfaceFront = front;
+			band.setBounds(winUpperLeftX, winUpperLeftY, 3, winHeight + 1);
+			patchSurface(band);
+			band.setBounds(winUpperLeftX, winUpperLeftY, winWidth + 1, 3);
+			patchSurface(band);
+			band.setBounds(winUpperLeftX + winWidth, winUpperLeftY, 1, winHeight + 1);
+			patchSurface(band);
+			band.setBounds(winUpperLeftX, winUpperLeftY + winHeight, winWidth + 1, 1);
+			patchSurface(band);
+		}
+		
+		// the frame outside the opaque bounds is only a few thin lines, 
+		//		so it is drawn directly and the image covers the rest of it
+		drawFrameLines(g, winUpperLeftX, winUpperLeftY, winWidth, winHeight, front);
+		
+		// a blit of an opaque image is a plain copy, no blending
+		g.drawImage(surface, winUpperLeftX, winUpperLeftY, null);
+	}//draw end
+	
+	/**
+	 * Draws the window and its squares straight to g without using any 
+	 * 		cached image.
+	 * @param g
+	 * 			Graphics object for drawing
+	 * @param front
+	 * 			boolean that tells whether window to be drawn is the 
+	 * 				front/active window
+	 * @param occluders
+	 * 			opaque rectangles of higher windows, may be null
+	 */
+	public void render(Graphics g, boolean front, ArrayList<Rectangle> occluders) {
+		
+		drawFrame(g, front);
+		
+		//draws all squares in each window that are not hidden
+		if(clipSquares){
+			Graphics sg = g.create();
+			sg.clipRect(winUpperLeftX, winUpperLeftY, winWidth + 1, winHeight + 1);
+			squares.draw(sg, occluders);
+			sg.dispose();
+		}else{
+			squares.draw(g, occluders);
+		}
+	}//render end
+	
+	/**
+	 * Draws the window like render, but fills the squares straight into 
+	 * 		the pixels of the opaque image g draws into, instead of one 
+	 * 		fillRect per square.
+	 * @param g
+	 * 			Graphics object drawing into the image
+	 * @param front
+	 * 			boolean that tells whether window to be drawn is the 
+	 * 				front/active window
+	 * @param occluders
+	 * 			opaque rectangles of higher windows, may be null
+	 * @param pixels
+	 * 			pixels of a TYPE_INT_RGB image, one int per pixel
+	 * @param scanWidth
+	 * 			width of the image
+	 * @param originX
+	 * 			canvas x location of the left column of the image
+	 * @param originY
+	 * 			canvas y location of the top row of the image
+	 */
+	public void render(Graphics g, boolean front, ArrayList<Rectangle> occluders, 
+			int[] pixels, int scanWidth, int originX, int originY) {
 		
-		// iterator placed at beginning of squares linked list
-		ListIterator<Square> iter = squares.listIterator(); 
+		drawFrame(g, front);
+		if(clipSquares){
+			Graphics sg = g.create();
+			sg.clipRect(winUpperLeftX, winUpperLeftY, winWidth + 1, winHeight + 1);
+			squares.fill(sg, pixels, scanWidth, originX, originY, sg.getClipBounds(), 
+					occluders);
+			sg.dispose();
+		}else{
+			squares.fill(g, pixels, scanWidth, originX, originY, g.getClipBounds(), 
+					occluders);
+		}
+	}//render end
+	
+	/**
+	 * Draws the white fill, the border and the shadow of the window.
+	 * @param g
+	 * 			Graphics object for drawing
+	 * @param front
+	 * 			boolean that tells whether window to be drawn is the 
+	 * 				front/active window
+	 */
+	void drawFrame(Graphics g, boolean front) {
+		drawFrame(g, winUpperLeftX, winUpperLeftY, winWidth, winHeight, front);
+	}//drawFrame end
+	
+	/**
+	 * Draws the white fill, the border and the shadow of a window with the 
+	 * 		given geometry, for callers such as SceneSnapshot that only 
+	 * 		have a copy of the geometry.
+	 * @param g
+	 * 			Graphics object for drawing
+	 * @param winUpperLeftX
+	 * 			window upper left x location
+	 * @param winUpperLeftY
+	 * 			window upper left y location
+	 * @param winWidth
+	 * 			window width
+	 * @param winHeight
+	 * 			window height
+	 * @param front
+	 * 			boolean that tells whether window to be drawn is the 
+	 * 				front/active window
+	 */
+	static void drawFrame(Graphics g, int winUpperLeftX, int winUpperLeftY, 
+			int winWidth, int winHeight, boolean front) {
 		
 		g.setColor(Color.white);// window fill color
 		
 		//filled window w/o border
 		g.fillRect(winUpperLeftX, winUpperLeftY, winWidth, winHeight); 
 		
+		drawFrameLines(g, winUpperLeftX, winUpperLeftY, winWidth, winHeight, front);
+	}//drawFrame end
+	
+	/**
+	 * handles a user click inside the active window
+	 * @param x
+	 * 			x coordinate of user click
+	 * @param y
+	 * 			y coordinate of user click
+	 * @return the area changed by the click, or null if nothing changed; 
+	 * 		the rectangle is reused by the next click
+	 */
+	public Rectangle handleClick(int x, int y) {
+		
+		if(!WindowMetrics.ENABLED){
+			return applyClick(x, y);
+		}
+		long start = System.nanoTime();
+		int before = squares.size();
+		Rectangle changed = applyClick(x, y);
+		WindowMetrics.windowClick.record(System.nanoTime() - start);
+		if(squares.size() > before){
+			WindowMetrics.squaresAdded.add(squares.size() - before);
+		}else{
+			WindowMetrics.squaresRemoved.add(before - squares.size());
+		}
+		return changed;
+	}//handleClick end
+	
+	/**
+	 * Adds or removes squares for a click inside the active window.
+	 * @param x
+	 * 			x coordinate of user click
+	 * @param y
+	 * 			y coordinate of user click
+	 * @return the area changed by the click, or null if nothing changed; 
+	 * 		the rectangle is reused by the next click
+	 */
+	Rectangle applyClick(int x, int y) {
+		
+		// determines if click is inside another square and if so deletes 
+		//		that square and all squares that intersect it.  Only the 
+		//		grid cells around the click are searched.
+		Rectangle deleted = grid.removeAt(x, y); 
+		if(deleted != null){
+			version++;
+			patchSurface(deleted);
+			damageView(deleted);
+		}
+		
+		//if nothing is deleted from the squares store then a new 
+		//		square is created
+		if(deleted == null){
+			// makes sure that all parts of all boxes are within the 
+			//		window boundary.
+			if(x-10 >= winUpperLeftX && y-10 >= winUpperLeftY &&
+					x+10 <= winUpperLeftX + winWidth && y+10 <= winUpperLeftY + 
+						winHeight){
+				grid.add(x, y, SQ_WIDTH, SQ_HEIGHT, squareColor.getRGB());
+				added.setBounds(x - 10, y - 10, SQ_WIDTH, SQ_HEIGHT);
+				version++;
+				patchSurface(added);
+				damageView(added);
+				return added;
+			}//inner if end
+		}//if end
+		return deleted;
+	}//applyClick end
+	
+	/**
+	 * Adds an area whose squares changed to the damage the next snapshot 
+	 * 		patches into the cached image of the last one.
+	 * @param changed
+	 * 			area of the canvas that changed
+	 */
+	private void damageView(Rectangle changed) {
+		
+		int left = changed.x - winUpperLeftX;
+		int top = changed.y - winUpperLeftY;
+		if(viewDamage.isEmpty()){
+			viewDamage.setBounds(left, top, changed.width, changed.height);
+		}else{
+			viewDamage.add(new Rectangle(left, top, changed.width, changed.height));
+		}
+	}//damageView end
+	
+	/**
+	 * Draws the border and the shadow of a window with the given geometry, 
+	 * 		without the white fill. Drawn just before the cached image of 
+	 * 		the window is copied over it, the lines inside the opaque 
+	 * 		bounds are covered again, so this leaves only the frame outside 
+	 * 		the image without clipping to it.
+	 * @param g
+	 * 			Graphics object for drawing
+	 * @param winUpperLeftX
+	 * 			window upper left x location
+	 * @param winUpperLeftY
+	 * 			window upper left y location
+	 * @param winWidth
+	 * 			window width
+	 * @param winHeight
+	 * 			window height
+	 * @param front
+	 * 			boolean that tells whether window to be drawn is the 
+	 * 				front/active window
+	 */
+	static void drawFrameLines(Graphics g, int winUpperLeftX, int winUpperLeftY, 
+			int winWidth, int winHeight, boolean front) {
+		
 		// determine if the window is active and if so 
 		//		sets border color red instead of black
 		if(front == true)
@@ -104,55 +438,210 @@ public class Windows{
 				winUpperLeftY-2);
 		g.drawLine(winUpperLeftX+3, winUpperLeftY-3, winUpperLeftX+winWidth+7, 
 				winUpperLeftY-3);
+	}//drawFrameLines end
+	
+	/**
+	 * Brings part of the cached surface up to date by redrawing the frame 
+	 * 		and only the squares that overlap the area. The frame is 
+	 * 		written straight into the pixels, and the Graphics kept for 
+	 * 		translucent squares is only made again after the window moved, 
+	 * 		so a patch allocates nothing.
+	 * @param changed
+	 * 			area of the canvas that changed, may be null
+	 */
+	void patchSurface(Rectangle changed) {
 		
-		
-		
-		
-		
-		//draws all squares in each window
-		while(iter.hasNext()){			
-			iter.next().draw(g); // call to Square draw method
-		}// while end	
-	}//draw end
+		if(surface == null || changed == null){
+			return; // nothing cached, or nothing changed
+		}
+		if(surfaceGraphics == null || surfaceX != winUpperLeftX 
+				|| surfaceY != winUpperLeftY){
+			if(surfaceGraphics != null){
+				surfaceGraphics.dispose();
+			}
+			surfaceGraphics = surface.createGraphics();
+			surfaceGraphics.translate(-winUpperLeftX, -winUpperLeftY);
+			surfaceX = winUpperLeftX;
+			surfaceY = winUpperLeftY;
+		}
+		fillFrame(changed);
+		grid.fill(surfaceGraphics, surfacePixels, winWidth + 1, winUpperLeftX, 
+				winUpperLeftY, changed);
+	}//patchSurface end
 	
 	/**
-	 * handles a user click inside the active window
-	 * @param x
-	 * 			x coordinate of user click
-	 * @param y
-	 * 			y coordinate of user click
+	 * Writes the white fill and the border inside part of the cached 
+	 * 		surface, the same pixels drawFrame draws there: the three 
+	 * 		rows and columns along the top and left edges and the last row 
+	 * 		and column are border, everything else is white.
+	 * @param area
+	 * 			area of the canvas to be written
+	 */
+	void fillFrame(Rectangle area) {
+		fillFrame(surfacePixels, winUpperLeftX, winUpperLeftY, winWidth, winHeight, 
+				surfaceFront, area);
+	}//fillFrame end
+	
+	/**
+	 * Writes the white fill and the border inside part of a cached image 
+	 * 		of a window with the given geometry, for callers such as 
+	 * 		SceneSnapshot that only have a copy of the geometry.
+	 * @param surfacePixels
+	 * 			pixels of the image, one int per pixel
+	 * @param winUpperLeftX
+	 * 			window upper left x location
+	 * @param winUpperLeftY
+	 * 			window upper left y location
+	 * @param winWidth
+	 * 			window width
+	 * @param winHeight
+	 * 			window height
+	 * @param front
+	 * 			boolean that tells whether the border is the one of the 
+	 * 				front/active window
+	 * @param area
+	 * 			area of the canvas to be written
 	 */
-	public void handleClick(int x, int y) {
+	static void fillFrame(int[] surfacePixels, int winUpperLeftX, int winUpperLeftY, 
+			int winWidth, int winHeight, boolean front, Rectangle area) {
 		
-		// boolean that indicates whether squares have been deleted from 
-		//		the squares linked list.
-		boolean deleted = false; 
+		int border = (front ? Color.red : Color.black).getRGB();
+		int white = Color.white.getRGB();
+		int scanWidth = winWidth + 1;
 		
-		// iterator inserted at beginning of squares linked list
-		ListIterator<Square> iter = squares.listIterator(); 
+		// area relative to the surface, clipped to it
+		int left = Math.max(area.x - winUpperLeftX, 0);
+		int top = Math.max(area.y - winUpperLeftY, 0);
+		int right = Math.min(area.x + area.width - winUpperLeftX, winWidth + 1);
+		int bottom = Math.min(area.y + area.height - winUpperLeftY, winHeight + 1);
 		
-		// determines if click is inside another square and if so deletes 
-		//		that square and all squares that intersect it.
-		while(iter.hasNext()){
-			if(iter.next().isInside(x,y)){
-				iter.remove();
-				deleted = true;
-			}//if end
-		}//while end
-		
-		//if nothing is deleted from the squares linked list then a new 
-		//		square is created
-		if(deleted == false){
-			// makes sure that all parts of all boxes are within the 
-			//		window boundary.
-			if(x-10 >= winUpperLeftX && y-10 >= winUpperLeftY &&
-					x+10 <= winUpperLeftX + winWidth && y+10 <= winUpperLeftY + 
-						winHeight){
-				Square s = new Square(x, y, SQ_WIDTH, SQ_HEIGHT, squareColor);
-				squares.add(s);
-			}//inner if end
-		}//if end
-	}//handleClick end
+		for(int row = top; row < bottom; row++){
+			int start = row * scanWidth;
+			if(row < 3 || row == winHeight){
+				Arrays.fill(surfacePixels, start + left, start + right, border);
+				continue;
+			}
+			Arrays.fill(surfacePixels, start + left, start + right, white);
+			for(int col = left; col < right && col < 3; col++){
+				surfacePixels[start + col] = border;
+			}
+			if(winWidth >= left && winWidth < right){
+				surfacePixels[start + winWidth] = border;
+			}
+		}//for loop end
+	}//fillFrame end
+	
+	/**
+	 * Returns an immutable copy of this window for drawing on another 
+	 * 		thread. The copy is reused until the window changes, so taking 
+	 * 		a snapshot of an unchanged window costs nothing, and a window 
+	 * 		that was only moved or resized shares the squares of its last 
+	 * 		copy. The squares themselves are shared copy-on-write, so they 
+	 * 		are only copied if the window is changed again. A new copy 
+	 * 		starts from the cached image of the last one and only patches 
+	 * 		the area whose squares changed.
+	 * @return a copy of the window geometry and squares
+	 */
+	public SceneSnapshot.WindowView snapshot() {
+		if(view == null){
+			view = new SceneSnapshot.WindowView(this, squares.copy());
+		}else if(view.version != version){
+			view = new SceneSnapshot.WindowView(this, squares.copy(), view, viewDamage);
+		}else if(view.x != winUpperLeftX || view.y != winUpperLeftY 
+				|| view.width != winWidth || view.height != winHeight || view.id != id){
+			view = new SceneSnapshot.WindowView(this, 
+					view.squares.movedTo(winUpperLeftX, winUpperLeftY), view, viewDamage);
+		}
+		viewDamage.setBounds(0, 0, 0, 0);
+		return view;
+	}//snapshot end
+	
+	/**
+	 * Moves the window. The squares are stored relative to the window, 
+	 * 		so nothing else changes and the cached surface stays valid.
+	 * 		Windows in a MainWindows must be moved with 
+	 * 		MainWindows.moveWindow so the index is kept up to date.
+	 * @param newX
+	 * 			new x location of the window
+	 * @param newY
+	 * 			new y location of the window
+	 */
+	public void moveTo(int newX, int newY) {
+		winUpperLeftX = newX;
+		winUpperLeftY = newY;
+		squares.moveTo(newX, newY);
+	}//moveTo end
+	
+	/**
+	 * Resizes the window. Squares that no longer fit are kept, but are 
+	 * 		clipped to the window until it is made big enough again. The 
+	 * 		grid keeps its old size, which still finds every square, until 
+	 * 		regrid is called. Windows in a MainWindows must be resized 
+	 * 		with MainWindows.resizeWindow so the index is kept up to date.
+	 * @param newWidth
+	 * 			new width of the window
+	 * @param newHeight
+	 * 			new height of the window
+	 */
+	public void resizeTo(int newWidth, int newHeight) {
+		winWidth = newWidth;
+		winHeight = newHeight;
+		clipSquares = !squares.fitsIn(newWidth, newHeight);
+		invalidate(); // the surface is the size of the window
+	}//resizeTo end
+	
+	/**
+	 * Rebuilds the grid for the current window size, if it changed.
+	 */
+	public void regrid() {
+		if(grid.cols != winWidth / SQ_WIDTH + 1 || grid.rows != winHeight / SQ_HEIGHT + 1){
+			grid = new SquareGrid(squares, winWidth, winHeight, SQ_WIDTH, SQ_HEIGHT);
+			grid.fileAll();
+		}
+	}//regrid end
+	
+	/**
+	 * Throws away the cached surface, for changes such as a new window 
+	 * 		size that the image cannot be patched for.
+	 */
+	public void invalidate() {
+		if(surfaceGraphics != null){
+			surfaceGraphics.dispose();
+			surfaceGraphics = null;
+		}
+		surface = null;
+		surfacePixels = null;
+	}//invalidate end
+	
+	/**
+	 * @return the area that draw paints completely, the white fill and 
+	 * 		the outer border
+	 */
+	public Rectangle getOpaqueBounds(){
+		return new Rectangle(winUpperLeftX, winUpperLeftY, winWidth + 1, 
+				winHeight + 1);
+	}//getOpaqueBounds end
+	
+	/**
+	 * @return the area painted by draw, including the border and the 
+	 * 		shadow above and to the right of the window
+	 */
+	public Rectangle getBounds(){
+		return new Rectangle(winUpperLeftX, winUpperLeftY - 3, winWidth + 8, 
+				winHeight + 6);
+	}//getBounds end
+	
+	/**
+	 * Same as getBounds, but stores the area in a given rectangle.
+	 * @param into
+	 * 			rectangle the area is stored in
+	 * @return into
+	 */
+	public Rectangle getBounds(Rectangle into){
+		into.setBounds(winUpperLeftX, winUpperLeftY - 3, winWidth + 8, 
+				winHeight + 6);
+		return into;
+	}//getBounds end
 	
 	/**
 	 * 